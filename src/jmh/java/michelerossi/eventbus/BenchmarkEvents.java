@@ -0,0 +1,54 @@
+package michelerossi.eventbus;
+
+/**
+ * Events published by the event bus benchmarks, forming a class hierarchy so that the cost of resolving the subscribers
+ * of subclasses can be measured. Subscribers always subscribe to {@link Event0}.
+ */
+final class BenchmarkEvents {
+    static final int NUM_KEYS = 100;
+
+    private BenchmarkEvents() {
+    }
+
+    /**
+     * Creates an event of the specified depth in the hierarchy.
+     * @param depth the depth, between 0 and 3
+     * @param key   the key tested by the subscriber filters, between 0 and {@link #NUM_KEYS}
+     * @return the event
+     */
+    static Event0 create(int depth, int key) {
+        return switch (depth) {
+            case 0 -> new Event0(key);
+            case 1 -> new Event1(key);
+            case 2 -> new Event2(key);
+            case 3 -> new Event3(key);
+            default -> throw new IllegalArgumentException("Unsupported hierarchy depth " + depth);
+        };
+    }
+
+    static class Event0 {
+        final int key;
+
+        Event0(int key) {
+            this.key = key;
+        }
+    }
+
+    static class Event1 extends Event0 {
+        Event1(int key) {
+            super(key);
+        }
+    }
+
+    static class Event2 extends Event1 {
+        Event2(int key) {
+            super(key);
+        }
+    }
+
+    static final class Event3 extends Event2 {
+        Event3(int key) {
+            super(key);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package michelerossi.eventbus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import michelerossi.Stoppable;
+
+/**
+ * Latency from the publication of an event to its delivery to all the subscribers, reported as percentiles. <br>
+ * Each operation publishes one event and waits until every subscriber has received it, so that the sampled time of
+ * the operation is the enqueue-to-delivery latency of the event. For {@link ConcurrentEventBus} this includes the
+ * hand-over to the dispatch thread.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventBusLatencyBenchmark {
+
+    @Param({"simple", "concurrent"})
+    String busType;
+
+    @Param({"1", "8"})
+    int numSubscribers;
+
+    private final AtomicLong deliveredEvents = new AtomicLong();
+    private EventBus eventBus;
+    private int nextKey;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        eventBus = "simple".equals(busType) ? new SimpleEventBus() : new ConcurrentEventBus();
+        for (int i = 0; i < numSubscribers; i++) {
+            eventBus.addSubscriber(BenchmarkEvents.Event0.class, event -> deliveredEvents.incrementAndGet());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (eventBus instanceof Stoppable stoppable) {
+            stoppable.stop();
+        }
+    }
+
+    @Benchmark
+    public long publishAndAwaitDelivery() {
+        var expectedDeliveries = deliveredEvents.get() + numSubscribers;
+        nextKey = (nextKey + 1) % BenchmarkEvents.NUM_KEYS;
+        eventBus.publishEvent(BenchmarkEvents.create(0, nextKey));
+        while (deliveredEvents.get() < expectedDeliveries) {
+            Thread.onSpinWait();
+        }
+        return expectedDeliveries;
+    }
+}
@@ -0,0 +1,100 @@
+package michelerossi.eventbus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import michelerossi.Stoppable;
+
+/**
+ * Publishing throughput of {@link SimpleEventBus} and {@link ConcurrentEventBus}. <br>
+ * For the simple bus the measured time includes the delivery to the subscribers, for the concurrent bus only the
+ * queueing of the events: see {@link EventBusLatencyBenchmark} for the time until the events are delivered. <br>
+ * Run with <code>-prof gc</code> to get the allocation rate per publication, and once per number of publisher threads
+ * to see how publishing scales under contention, e.g. with <code>-t 1</code>, <code>-t 2</code>, <code>-t 4</code> and
+ * <code>-t 8</code>: the events are then published by that many threads, each with its own {@link Publisher}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventBusThroughputBenchmark {
+
+    @Param({"simple", "concurrent"})
+    String busType;
+
+    @Param({"1", "8", "64"})
+    int numSubscribers;
+
+    /** The fraction of the events passing the filter of each subscriber */
+    @Param({"1.0", "0.1"})
+    double selectivity;
+
+    @Param({"false", "true"})
+    boolean coalesce;
+
+    /** The depth, in the class hierarchy, of the published events below the subscribed class */
+    @Param({"0", "3"})
+    int hierarchyDepth;
+
+    private final LongAdder deliveredEvents = new LongAdder();
+    private EventBus eventBus;
+    private BenchmarkEvents.Event0[] events;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        eventBus = "simple".equals(busType) ? new SimpleEventBus() : new ConcurrentEventBus();
+        var acceptedKeys = (int) Math.round(selectivity * BenchmarkEvents.NUM_KEYS);
+        for (int i = 0; i < numSubscribers; i++) {
+            eventBus.addSubscriberForFilteredEvents(BenchmarkEvents.Event0.class, event -> deliveredEvents.increment(), event -> event.key < acceptedKeys);
+        }
+        events = new BenchmarkEvents.Event0[BenchmarkEvents.NUM_KEYS];
+        for (int key = 0; key < events.length; key++) {
+            events[key] = BenchmarkEvents.create(hierarchyDepth, key);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (eventBus instanceof Stoppable stoppable) {
+            stoppable.stop();
+        }
+    }
+
+    /** Round-robins over the keys so that the filters accept the configured fraction of the events */
+    @State(Scope.Thread)
+    public static class Publisher {
+        private int nextKey;
+
+        int nextKey() {
+            var key = nextKey;
+            nextKey = key == BenchmarkEvents.NUM_KEYS - 1 ? 0 : key + 1;
+            return key;
+        }
+    }
+
+    @Benchmark
+    public void publish(Publisher publisher) {
+        var event = events[publisher.nextKey()];
+        if (coalesce) {
+            eventBus.publishEventCoalesce(event);
+        } else {
+            eventBus.publishEvent(event);
+        }
+    }
+}
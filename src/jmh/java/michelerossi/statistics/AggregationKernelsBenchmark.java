@@ -0,0 +1,76 @@
+package michelerossi.statistics;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scalar against Vector API implementations of the {@link AggregationKernels} used by {@link WindowAggregations}. <br>
+ * The Vector API kernels are only built with the <code>vector</code> Maven profile: run with <code>-Pvector,jmh</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class AggregationKernelsBenchmark {
+    private static final int[] BUCKET_BOUNDS = {10, 100, 1_000, 10_000, 100_000};
+
+    @Param({"10000", "100000", "1000000"})
+    int windowSize;
+
+    @Param({"scalar", "vector"})
+    String kernels;
+
+    private AggregationKernels aggregationKernels;
+    private int[] samples;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        aggregationKernels = "vector".equals(kernels) ? loadVectorKernels() : new ScalarAggregationKernels();
+        samples = new Random(42).ints(windowSize, 0, 1_000_000).toArray();
+    }
+
+    private static AggregationKernels loadVectorKernels() {
+        try {
+            return (AggregationKernels) Class.forName("michelerossi.statistics.VectorAggregationKernels")
+                .getDeclaredConstructor()
+                .newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            throw new IllegalStateException("The Vector API kernels are only built with the vector profile", ex);
+        }
+    }
+
+    @Benchmark
+    public long sum() {
+        return aggregationKernels.sum(samples);
+    }
+
+    @Benchmark
+    public int min() {
+        return aggregationKernels.min(samples);
+    }
+
+    @Benchmark
+    public int max() {
+        return aggregationKernels.max(samples);
+    }
+
+    @Benchmark
+    public int[] countBelow() {
+        return aggregationKernels.countBelow(samples, BUCKET_BOUNDS);
+    }
+}
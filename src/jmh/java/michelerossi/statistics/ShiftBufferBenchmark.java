@@ -0,0 +1,93 @@
+package michelerossi.statistics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of adding samples to and taking snapshots of {@link IntShiftBuffer} and {@link LockFreeIntShiftBuffer}. <br>
+ * The 'contended' groups add samples on one thread while another one takes snapshots, as the statistics do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShiftBufferBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    int bufferSize;
+
+    private IntShiftBuffer buffer;
+    private LockFreeIntShiftBuffer lockFreeBuffer;
+    private int[] lockFreeSnapshot;
+    private int nextValue;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        buffer = new IntShiftBuffer(bufferSize);
+        lockFreeBuffer = new LockFreeIntShiftBuffer(bufferSize);
+        lockFreeSnapshot = new int[lockFreeBuffer.getBufferSize()];
+        for (int i = 0; i < bufferSize; i++) {
+            buffer.add(i);
+            lockFreeBuffer.add(i);
+        }
+    }
+
+    @Benchmark
+    public int add() {
+        return buffer.add(nextValue++);
+    }
+
+    @Benchmark
+    public int[] getSamples() {
+        return buffer.getSamples();
+    }
+
+    @Benchmark
+    public void lockFreeAdd() {
+        lockFreeBuffer.add(nextValue++);
+    }
+
+    @Benchmark
+    public int lockFreeCopyInto() {
+        return lockFreeBuffer.copyInto(lockFreeSnapshot);
+    }
+
+    @Benchmark
+    @Group("contended")
+    public int contendedAdd() {
+        return buffer.add(nextValue++);
+    }
+
+    @Benchmark
+    @Group("contended")
+    public int[] contendedGetSamples() {
+        return buffer.getSamples();
+    }
+
+    @Benchmark
+    @Group("lockFreeContended")
+    public void lockFreeContendedAdd() {
+        lockFreeBuffer.add(nextValue++);
+    }
+
+    @Benchmark
+    @Group("lockFreeContended")
+    public int lockFreeContendedCopyInto() {
+        return lockFreeBuffer.copyInto(lockFreeSnapshot);
+    }
+}
@@ -0,0 +1,76 @@
+package michelerossi.statistics;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import michelerossi.eventbus.SimpleEventBus;
+
+/**
+ * Cost of adding a sample to the sliding window statistics, across window sizes. <br>
+ * In the eager mode every sample recalculates the statistics of the whole window, in the lazy mode statistics are
+ * only recalculated when published (at most every 100ms here) or read with a new sample in the window.
+ * The windows are full and contain random samples, there are no subscribers to the statistics.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatisticsBenchmark {
+    private static final int MAX_SAMPLE = 10_000;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    int windowSize;
+
+    private final SplittableRandom random = new SplittableRandom(42);
+    private SlidingWindowStatisticsImpl eagerStatistics;
+    private SlidingWindowStatisticsImpl lazyStatistics;
+    private LongSlidingWindowStatisticsImpl longStatistics;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        eagerStatistics = new SlidingWindowStatisticsImpl(new SimpleEventBus(), windowSize);
+        lazyStatistics = new SlidingWindowStatisticsImpl(new SimpleEventBus(), windowSize, 100, TimeUnit.MILLISECONDS, 0);
+        longStatistics = new LongSlidingWindowStatisticsImpl(new SimpleEventBus(), windowSize);
+        for (int i = 0; i < windowSize; i++) {
+            eagerStatistics.add(random.nextInt(MAX_SAMPLE));
+            lazyStatistics.add(random.nextInt(MAX_SAMPLE));
+            longStatistics.add(random.nextInt(MAX_SAMPLE));
+        }
+    }
+
+    @Benchmark
+    public void addEager() {
+        eagerStatistics.add(random.nextInt(MAX_SAMPLE));
+    }
+
+    @Benchmark
+    public void addLazy() {
+        lazyStatistics.add(random.nextInt(MAX_SAMPLE));
+    }
+
+    @Benchmark
+    public SlidingWindowStatistics.Statistics addLazyThenRead() {
+        lazyStatistics.add(random.nextInt(MAX_SAMPLE));
+        return lazyStatistics.getLatestStatistics();
+    }
+
+    @Benchmark
+    public void addLong() {
+        longStatistics.add(random.nextInt(MAX_SAMPLE));
+    }
+}
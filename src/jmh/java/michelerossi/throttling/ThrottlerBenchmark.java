@@ -0,0 +1,89 @@
+package michelerossi.throttling;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import michelerossi.Stoppable;
+import michelerossi.eventbus.SimpleEventBus;
+
+/**
+ * Throughput of the admission path of the throttlers under contention. <br>
+ * The limits are high enough for the calls to be admitted, so that the hot path is measured rather than the
+ * notification of status changes. {@link TimeBasedThrottler#hit()} is measured with and without striped hit counting;
+ * for {@link GcraThrottler} and {@link SharedMemoryThrottler} {@link Throttler#shouldProceed()} also consumes the permit,
+ * the latter counting it in a file mapped from the default temporary directory. <br>
+ * Run once per number of calling threads, e.g. with <code>-t 1</code>, <code>-t 2</code>, <code>-t 4</code> and
+ * <code>-t 8</code>, to see how the admission path scales under contention.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThrottlerBenchmark {
+
+    @Param({"timeBased", "timeBasedStriped", "gcra", "sharedMemory"})
+    String throttlerType;
+
+    private ScheduledExecutorService executorService;
+    private Throttler throttler;
+    private TimeBasedThrottler timeBasedThrottler;
+    private Path sharedFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        executorService = Executors.newSingleThreadScheduledExecutor();
+        switch (throttlerType) {
+            case "timeBased", "timeBasedStriped" -> {
+                timeBasedThrottler = new TimeBasedThrottler(
+                    executorService, new SimpleEventBus(), Integer.MAX_VALUE, 10, 100, TimeUnit.MILLISECONDS, "timeBasedStriped".equals(throttlerType));
+                throttler = timeBasedThrottler;
+            }
+            case "gcra" -> throttler = new GcraThrottler(new SimpleEventBus(), Integer.MAX_VALUE, 1, TimeUnit.MILLISECONDS, Integer.MAX_VALUE);
+            case "sharedMemory" -> {
+                sharedFile = Files.createTempFile("throttler", ".shm");
+                throttler = new SharedMemoryThrottler(sharedFile, new SimpleEventBus(), Integer.MAX_VALUE, 1, TimeUnit.SECONDS, 10);
+            }
+            default -> throw new IllegalArgumentException("Unknown throttler type " + throttlerType);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (throttler instanceof Stoppable stoppable) {
+            stoppable.stop();
+        }
+        executorService.shutdownNow();
+        if (sharedFile != null) {
+            Files.deleteIfExists(sharedFile);
+        }
+    }
+
+    @Benchmark
+    public Throttler.ThrottleResult proceedAndHit() {
+        var result = throttler.shouldProceed();
+        if (timeBasedThrottler != null) {
+            timeBasedThrottler.hit();
+        }
+        return result;
+    }
+}
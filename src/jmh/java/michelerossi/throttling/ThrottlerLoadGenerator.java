@@ -0,0 +1,139 @@
+package michelerossi.throttling;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import michelerossi.eventbus.SimpleEventBus;
+import michelerossi.statistics.LongSlidingWindowStatisticsImpl;
+
+/**
+ * Open-loop load generator measuring the admission latency of a throttler. <br>
+ * Requests are issued at a fixed rate regardless of how long previous requests took to be admitted, and the latency of
+ * each request is measured from the time it was meant to be issued rather than from the time it actually was: a stall
+ * of the generator or of the throttler is therefore accounted to every request which should have been issued meanwhile,
+ * instead of being hidden by the requests which were not issued (coordinated omission). <br>
+ * Requests wait for a permit with {@link Throttler#acquire()}, or with {@link Throttler#tryAcquire(Duration)} when a
+ * timeout is specified, in which case the requests which timed out are reported as rejected: their latency, close to
+ * the timeout, is reported separately so that it does not skew the admission latency. <br>
+ * Usage: <code>ThrottlerLoadGenerator &lt;gcra|timeBased&gt; &lt;requestsPerSecond&gt; &lt;permitsPerSecond&gt; &lt;durationSeconds&gt; [timeoutMillis]</code>,
+ * e.g. <code>mvn -Pjmh test-compile exec:exec -Djmh.main=michelerossi.throttling.ThrottlerLoadGenerator -Djmh.args="gcra 1200 1000 10"</code>
+ */
+public final class ThrottlerLoadGenerator {
+    private static final int[] REPORTED_PCTILES = {50, 90, 99, 100};
+
+    private ThrottlerLoadGenerator() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.err.println("Usage: ThrottlerLoadGenerator <gcra|timeBased> <requestsPerSecond> <permitsPerSecond> <durationSeconds> [timeoutMillis]");
+            System.exit(1);
+        }
+        var throttlerType = args[0];
+        var requestsPerSecond = Integer.parseInt(args[1]);
+        var permitsPerSecond = Integer.parseInt(args[2]);
+        var durationSeconds = Integer.parseInt(args[3]);
+        var timeout = args.length > 4 ? Duration.ofMillis(Long.parseLong(args[4])) : null;
+
+        var executorService = Executors.newSingleThreadScheduledExecutor();
+        try {
+            var throttler = createThrottler(throttlerType, permitsPerSecond, executorService);
+            run(throttler, requestsPerSecond, durationSeconds, timeout);
+            if (throttler instanceof TimeBasedThrottler timeBasedThrottler) {
+                timeBasedThrottler.stop();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private static Throttler createThrottler(String throttlerType, int permitsPerSecond, ScheduledExecutorService executorService) {
+        return switch (throttlerType) {
+            case "gcra" -> new GcraThrottler(new SimpleEventBus(), permitsPerSecond, 1, TimeUnit.SECONDS, Math.max(1, permitsPerSecond / 100));
+            // 10 samples of 100ms, i.e. a limit averaged over the last second
+            case "timeBased" -> new TimeBasedThrottler(executorService, new SimpleEventBus(), Math.max(1, permitsPerSecond / 10), 10, 100, TimeUnit.MILLISECONDS);
+            default -> throw new IllegalArgumentException("Unknown throttler type " + throttlerType);
+        };
+    }
+
+    private static void run(Throttler throttler, int requestsPerSecond, int durationSeconds, Duration timeout) {
+        var numRequests = Math.multiplyExact(requestsPerSecond, durationSeconds);
+        var periodNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+        var admittedLatencies = new long[numRequests];
+        var numAdmitted = new AtomicInteger();
+        var rejectedLatencies = new long[numRequests];
+        var numRejected = new AtomicInteger();
+        var completions = new ArrayList<CompletableFuture<?>>(numRequests);
+        var maxSendLagNanos = 0L;
+
+        var startNanos = System.nanoTime();
+        for (int i = 0; i < numRequests; i++) {
+            var intendedNanos = startNanos + i * periodNanos;
+            var lag = waitUntil(intendedNanos);
+            maxSendLagNanos = Math.max(maxSendLagNanos, lag);
+
+            CompletableFuture<?> admission;
+            if (timeout == null) {
+                admission = throttler.acquire().thenRun(() -> admittedLatencies[numAdmitted.getAndIncrement()] = System.nanoTime() - intendedNanos);
+            } else {
+                admission = throttler.tryAcquire(timeout).thenAccept(admitted -> {
+                    var latency = System.nanoTime() - intendedNanos;
+                    if (admitted) {
+                        admittedLatencies[numAdmitted.getAndIncrement()] = latency;
+                    } else {
+                        rejectedLatencies[numRejected.getAndIncrement()] = latency;
+                    }
+                });
+            }
+            completions.add(admission);
+        }
+        CompletableFuture.allOf(completions.toArray(CompletableFuture[]::new)).join();
+        var elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+        System.out.printf("%s: %d requests at %d/s over %.2f s, %d rejected, max send lag %d us%n",
+            throttler.getClass().getSimpleName(), numRequests, requestsPerSecond, elapsedSeconds, numRejected.get(), TimeUnit.NANOSECONDS.toMicros(maxSendLagNanos));
+        printLatencies("Admission latency from intended start", admittedLatencies, numAdmitted.get());
+        if (numRejected.get() > 0) {
+            printLatencies("Rejection latency from intended start", rejectedLatencies, numRejected.get());
+        }
+    }
+
+    /** Waits until the specified time, returning how late the caller was if the time had already passed */
+    private static long waitUntil(long deadlineNanos) {
+        var remaining = deadlineNanos - System.nanoTime();
+        while (remaining > 0) {
+            if (remaining > TimeUnit.MICROSECONDS.toNanos(100)) {
+                LockSupport.parkNanos(remaining - TimeUnit.MICROSECONDS.toNanos(50));
+            } else {
+                Thread.onSpinWait();
+            }
+            remaining = deadlineNanos - System.nanoTime();
+        }
+        return -remaining;
+    }
+
+    private static void printLatencies(String label, long[] latencies, int numLatencies) {
+        if (numLatencies == 0) {
+            System.out.println(label + ": none");
+            return;
+        }
+        // the window holds every latency, the statistics are calculated once when the last latency is added
+        var window = new LongSlidingWindowStatisticsImpl(new SimpleEventBus(), numLatencies);
+        for (int i = 0; i < numLatencies; i++) {
+            window.add(latencies[i]);
+        }
+        var statistics = window.getLatestStatistics();
+        var line = new StringBuilder(label + " (us):");
+        line.append(String.format(" mean %.1f", statistics.getMean() / 1000));
+        for (var pctile : REPORTED_PCTILES) {
+            line.append(pctile == 100 ? " max " : " p" + pctile + " ").append(TimeUnit.NANOSECONDS.toMicros(statistics.getPctile(pctile)));
+        }
+        System.out.println(line);
+    }
+}
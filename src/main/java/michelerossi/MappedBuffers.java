@@ -0,0 +1,54 @@
+package michelerossi;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Utility releasing the memory mapping of a {@link MappedByteBuffer} as soon as it is no longer used. <br>
+ * Without it the mapping, and the file descriptor keeping the file alive, are only released when the garbage collector
+ * finds the buffer unreachable. The JDK has no public API for it: <code>sun.misc.Unsafe.invokeCleaner</code>, from the
+ * jdk.unsupported module, is used and the mapping is left to the garbage collector if it is not available. <br>
+ * Accessing the buffer once unmapped crashes the JVM: callers must make sure no thread uses it any longer.
+ */
+@Slf4j
+public final class MappedBuffers {
+    private static Object unsafe;
+    private static Method invokeCleaner;
+
+    static {
+        try {
+            var unsafeClass = Class.forName("sun.misc.Unsafe");
+            var field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            log.warn("Unable to access sun.misc.Unsafe, mapped buffers will be unmapped by the garbage collector", ex);
+        }
+    }
+
+    private MappedBuffers() {
+    }
+
+    /**
+     * Unmaps the buffer, which must not be used any longer.
+     * @param buffer the buffer to unmap
+     * @return true if the buffer was unmapped, false if it is left to the garbage collector
+     */
+    public static boolean unmap(@NonNull MappedByteBuffer buffer) {
+        if (invokeCleaner == null) {
+            return false;
+        }
+        try {
+            invokeCleaner.invoke(unsafe, buffer);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            log.warn("Unable to unmap buffer {}", buffer, ex);
+            return false;
+        }
+    }
+}
@@ -1,12 +1,13 @@
 package michelerossi.eventbus;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
+import jdk.jfr.EventType;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
@@ -15,6 +16,13 @@ import michelerossi.Stoppable;
 /**
  * Concurrent {@link EventBus} implementation capable of storing events and publishing them asynchronously. <br>
  * A dispatch thread is allocated for each event type. <br>
+ * Slow batches of queued events and slow deliveries are recorded as {@link DispatchBatchEvent} and {@link DispatchEvent}
+ * flight recorder events. Events are queued with a {@link System#nanoTime()} stamp, the time each event waited in the
+ * queue being recorded with its delivery. <br>
+ * A {@link PooledEvent} is retained for each queued delivery and released once delivered, or when it is dropped by
+ * coalescing, so that it goes back to its pool after the last subscriber consumed it. The dispatch loop reuses its batch
+ * list, and neither publishing nor dispatching allocates once the dispatch thread of the event type is started and the
+ * flight recorder events are disabled: high rate publishers of pooled events therefore produce no garbage. <br>
  * This does not pose a risk under normal usage circumstances as the number of event types is unlikely to keep increasing
  * once the application has reached a steady state. <br>
  * Ideally this should be refactored to avoid using inheritance from SimpleEventBus.
@@ -22,28 +30,44 @@ import michelerossi.Stoppable;
  */
 @Slf4j
 public class ConcurrentEventBus extends SimpleEventBus implements EventBus, Stoppable {
+    private static final EventType DISPATCH_BATCH_EVENT_TYPE = EventType.getEventType(DispatchBatchEvent.class);
+
     private final Map<Class<?>, DispatcherForType> dispatchersForType = new HashMap<>();
 
     private static Function<? super Class<?>, DispatcherForType> createDispatcherForType(SubscriberWithPredicate<?> subscriber) {
         return clz -> {
-            var eventsList = new ArrayList<>();
-            var dispatchRunnable = getDispatchRunnable(subscriber, eventsList);
+            var eventQueue = new EventQueue();
+            var dispatchRunnable = getDispatchRunnable(clz, subscriber, eventQueue);
             var dispatchThread = new Thread(dispatchRunnable, "DispatchThread-" + clz.getSimpleName());
             dispatchThread.start();
-            return new DispatcherForType(clz, eventsList, dispatchThread);
+            return new DispatcherForType(clz, eventQueue, dispatchThread);
         };
     }
 
     @SuppressWarnings({"java:S2445", "rawtypes", "InfiniteLoopStatement"})
-    private static Runnable getDispatchRunnable(SubscriberWithPredicate subscriber, Collection<Object> eventsList) {
+    private static Runnable getDispatchRunnable(Class<?> eventType, SubscriberWithPredicate subscriber, EventQueue eventQueue) {
         return () -> {
             var threadName = Thread.currentThread().getName();
             log.info("{} dispatching {} events started", threadName, subscriber.clazz().getSimpleName());
 
+            var batch = new EventQueue();
             try {
                 while (true) {
-                    var eventsListCopy = copyAndClearQueuedEvents(subscriber, eventsList, threadName);
-                    dispatchEvents(subscriber, eventsListCopy);
+                    copyAndClearQueuedEvents(subscriber, eventQueue, batch, threadName);
+                    var queuedEvents = batch.size();
+                    if (queuedEvents == 0 || !DISPATCH_BATCH_EVENT_TYPE.isEnabled()) {
+                        dispatchEvents(subscriber, batch);
+                        continue;
+                    }
+                    var batchEvent = new DispatchBatchEvent();
+                    batchEvent.begin();
+                    dispatchEvents(subscriber, batch);
+                    batchEvent.end();
+                    if (batchEvent.shouldCommit()) {
+                        batchEvent.eventType = eventType;
+                        batchEvent.queuedEvents = queuedEvents;
+                        batchEvent.commit();
+                    }
                 }
             } catch (InterruptedException ie) {
                 var msg = String.format("%s interrupted, thread terminating", threadName);
@@ -54,30 +78,28 @@ public class ConcurrentEventBus extends SimpleEventBus implements EventBus, Stop
     }
 
     @SuppressWarnings({"rawtypes"})
-    private static void dispatchEvents(SubscriberWithPredicate subscriber, List<Object> eventsListCopy) {
-        var eventsIterator = eventsListCopy.iterator();
-        while (eventsIterator.hasNext()) {
-            var eventToDispatch = eventsIterator.next();
-            eventsIterator.remove();
-            dispatchEventToSub(eventToDispatch, subscriber);
+    private static void dispatchEvents(SubscriberWithPredicate subscriber, EventQueue batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            var eventToDispatch = batch.take(i);
+            dispatchEventToSub(eventToDispatch, subscriber, System.nanoTime() - batch.enqueueNanos(i));
+            releaseIfPooled(eventToDispatch);
         }
+        batch.clear();
     }
 
     @SuppressWarnings({"java:S2445", "java:S2274", "rawtypes", "SynchronizationOnLocalVariableOrMethodParameter"})
-    private static List<Object> copyAndClearQueuedEvents(SubscriberWithPredicate subscriber, Collection<Object> eventsList, String threadName) throws InterruptedException {
-        var eventsListCopy = new ArrayList<>();
-
-        synchronized (eventsList) {
-            eventsList.wait(1000);
-            if (eventsList.isEmpty()) {
+    private static void copyAndClearQueuedEvents(SubscriberWithPredicate subscriber, EventQueue eventQueue, EventQueue batch, String threadName) throws InterruptedException {
+        synchronized (eventQueue) {
+            eventQueue.wait(1000);
+            if (eventQueue.size() == 0) {
                 log.debug("{} no {} events to dispatch to {}", threadName, subscriber.clazz().getSimpleName(), subscriber);
             } else {
-                log.debug("{} dispatching {} events of type {} to {}", threadName, eventsList.size(), subscriber.clazz().getSimpleName(), subscriber);
-                eventsListCopy.addAll(eventsList);
-                eventsList.clear();
+                if (log.isDebugEnabled()) {
+                    log.debug("{} dispatching {} events of type {} to {}", threadName, eventQueue.size(), subscriber.clazz().getSimpleName(), subscriber);
+                }
+                eventQueue.transferTo(batch);
             }
         }
-        return eventsListCopy;
     }
 
     /** {@inheritDoc} */
@@ -107,22 +129,74 @@ public class ConcurrentEventBus extends SimpleEventBus implements EventBus, Stop
         var clazz = event.getClass();
         DispatcherForType dispatcherForType;
         synchronized (dispatchersForType) {
-            dispatcherForType = dispatchersForType.computeIfAbsent(clazz, createDispatcherForType(subscriber));
+            // a lookup first: the function creating the dispatcher captures the subscriber
+            dispatcherForType = dispatchersForType.get(clazz);
+            if (dispatcherForType == null) {
+                dispatcherForType = dispatchersForType.computeIfAbsent(clazz, createDispatcherForType(subscriber));
+            }
         }
         var events = dispatcherForType.events();
         synchronized (events) {
             if (coalesce) {
                 log.debug("Clearing existing {} queued events for type {} as coalescing is enabled", events.size(), clazz);
-                events.clear(); // this could be done much more efficiently by creating a one position implementation of Collection
+                events.releaseAndClear();
+            }
+            retainIfPooled(event);
+            events.add(event, System.nanoTime());
+            if (log.isDebugEnabled()) {
+                log.debug("Event {} of type {} queued for dispatch ({} items queued)", event, clazz, events.size());
             }
-            events.add(event);
-            log.debug("Event {} of type {} queued for dispatch ({} items queued)", event, clazz, events.size());
             events.notifyAll();
         }
     }
 
     private record DispatcherForType(@NonNull Class<?> eventType,
-                                     @NonNull Collection<Object> events,
+                                     @NonNull EventQueue events,
                                      @NonNull Thread dispatchThread) {
     }
+
+    /** Events queued for a dispatch thread, with the time they were queued kept in a parallel array */
+    private static final class EventQueue {
+        private final List<Object> events = new ArrayList<>();
+        private long[] enqueueNanos = new long[16];
+
+        int size() {
+            return events.size();
+        }
+
+        void add(Object event, long nanos) {
+            var size = events.size();
+            if (size == enqueueNanos.length) {
+                enqueueNanos = Arrays.copyOf(enqueueNanos, 2 * size);
+            }
+            enqueueNanos[size] = nanos;
+            events.add(event);
+        }
+
+        /** Returns the event at the specified index, clearing the reference so that it can be recycled or collected */
+        Object take(int index) {
+            return events.set(index, null);
+        }
+
+        long enqueueNanos(int index) {
+            return enqueueNanos[index];
+        }
+
+        /** Moves the queued events to the end of the other queue */
+        void transferTo(EventQueue other) {
+            for (int i = 0; i < events.size(); i++) {
+                other.add(events.get(i), enqueueNanos[i]);
+            }
+            events.clear();
+        }
+
+        void releaseAndClear() {
+            events.forEach(SimpleEventBus::releaseIfPooled);
+            events.clear();
+        }
+
+        void clear() {
+            events.clear();
+        }
+    }
 }
@@ -0,0 +1,28 @@
+package michelerossi.eventbus;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event timing a batch of queued events dispatched by a {@link ConcurrentEventBus} dispatch thread,
+ * together with the backlog found in the queue.
+ */
+@Name("michelerossi.eventbus.DispatchBatch")
+@Label("Event Dispatch Batch")
+@Description("Batch of queued events dispatched by a ConcurrentEventBus dispatch thread")
+@Category({"Event Bus", "Dispatch"})
+@Threshold("10 ms")
+@StackTrace(false)
+class DispatchBatchEvent extends Event {
+    @Label("Event Type")
+    Class<?> eventType;
+
+    @Label("Queued Events")
+    @Description("The number of events queued when the dispatch thread woke up")
+    int queuedEvents;
+}
@@ -0,0 +1,41 @@
+package michelerossi.eventbus;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event timing the delivery of an event to a subscriber. <br>
+ * For the deliveries queued by a {@link ConcurrentEventBus} the time the event waited in the queue of its dispatch thread
+ * is recorded too, the duration of the event and its threshold only covering the call to the subscriber. <br>
+ * Only deliveries slower than the threshold are recorded by default. The event is only allocated while it is enabled in
+ * a recording, so that deliveries produce no garbage otherwise, and its fields are only populated when the event is
+ * going to be committed.
+ */
+@Name("michelerossi.eventbus.Dispatch")
+@Label("Event Dispatch")
+@Description("Delivery of an event to a subscriber")
+@Category({"Event Bus", "Dispatch"})
+@Threshold("1 ms")
+@StackTrace(false)
+class DispatchEvent extends Event {
+    @Label("Event Type")
+    Class<?> eventType;
+
+    @Label("Subscriber")
+    String subscriber;
+
+    @Label("Queue Wait")
+    @Description("The time the event waited for its dispatch thread, 0 if delivered on the publishing thread")
+    @Timespan(Timespan.NANOSECONDS)
+    long queueWait;
+
+    @Label("Failed")
+    @Description("True if the subscriber threw an exception")
+    boolean failed;
+}
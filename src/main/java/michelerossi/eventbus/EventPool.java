@@ -0,0 +1,102 @@
+package michelerossi.eventbus;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import lombok.NonNull;
+
+/**
+ * A lock-free pool of preallocated {@link PooledEvent} instances, letting high rate publishers fill and publish events
+ * without producing garbage. <br>
+ * The free events are held in an array of slots: {@link #claim()} takes an event out of a slot and the event goes back to
+ * a free slot when its last reference is released, both with a single compare-and-set in the common case. Scans start
+ * from a random slot so that concurrent publishers do not all contend on the first slots. <br>
+ * The pool never blocks: when all the events are in use a new one is allocated, and a released event finding no free
+ * slot is left to the garbage collector. {@link #getNumAllocated()} tells if the capacity is large enough.
+ * @param <T> the type of the pooled events
+ */
+public class EventPool<T extends PooledEvent> {
+    private final AtomicReferenceArray<T> slots;
+    private final Supplier<T> factory;
+    private final LongAdder numAllocated = new LongAdder();
+
+    /**
+     * Constructor, preallocating <code>capacity</code> events.
+     * @param capacity the number of events kept in the pool
+     * @param factory  creates the events
+     */
+    public EventPool(int capacity, @NonNull Supplier<T> factory) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid pool capacity " + capacity);
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.factory = factory;
+        for (int i = 0; i < capacity; i++) {
+            slots.set(i, allocate());
+        }
+    }
+
+    private T allocate() {
+        numAllocated.increment();
+        return factory.get();
+    }
+
+    /**
+     * Takes a free event out of the pool, allocating a new one if none is available. <br>
+     * The caller holds the only reference to the event, which it releases by publishing it or by calling
+     * {@link PooledEvent#release()}.
+     * @return an event, reset since its previous use
+     */
+    public T claim() {
+        var capacity = slots.length();
+        var start = ThreadLocalRandom.current().nextInt(capacity);
+        for (int i = 0; i < capacity; i++) {
+            var index = (start + i) % capacity;
+            var event = slots.get(index);
+            if (event != null && slots.compareAndSet(index, event, null)) {
+                event.claimed(this);
+                return event;
+            }
+        }
+        var event = allocate();
+        event.claimed(this);
+        return event;
+    }
+
+    @SuppressWarnings("unchecked")
+    void recycle(PooledEvent event) {
+        var capacity = slots.length();
+        var start = ThreadLocalRandom.current().nextInt(capacity);
+        for (int i = 0; i < capacity; i++) {
+            var index = (start + i) % capacity;
+            if (slots.get(index) == null && slots.compareAndSet(index, null, (T) event)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of events allocated since the pool was created, its capacity included. <br>
+     * This number only grows beyond the capacity when more events than the capacity are in use at the same time.
+     * @return the number of events allocated since the pool was created
+     */
+    public long getNumAllocated() {
+        return numAllocated.sum();
+    }
+
+    /**
+     * Returns the number of events currently available in the pool.
+     * @return the number of events currently available in the pool
+     */
+    public int getNumAvailable() {
+        var available = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) != null) {
+                available++;
+            }
+        }
+        return available;
+    }
+}
@@ -0,0 +1,94 @@
+package michelerossi.eventbus;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base class of mutable events recycled through an {@link EventPool} instead of being allocated for every publication. <br>
+ * The lifecycle of a pooled event is tracked by reference counting:
+ * <ul>
+ *     <li>{@link EventPool#claim()} hands the event to the publisher holding one reference</li>
+ *     <li>the publisher fills the event and publishes it, transferring its reference to the bus</li>
+ *     <li>the {@link ConcurrentEventBus} retains a reference for each queued delivery and releases it once the subscriber
+ *     consumed the event or when the event is dropped by coalescing</li>
+ *     <li>when the last reference is released the event is {@link #reset()} and returned to its pool</li>
+ * </ul>
+ * Subscribers must therefore not keep a pooled event after consuming it, unless they {@link #retain()} it and
+ * {@link #release()} it once they are done with it. <br>
+ * Event bus implementations not aware of pooled events never release them: the events are then simply garbage collected
+ * and the pool allocates new ones. <br>
+ * A pooled event created directly rather than claimed from a pool is not reference counted by the buses: it is delivered
+ * like any other event and left to the garbage collector.
+ */
+public abstract class PooledEvent {
+    private final AtomicInteger refCount = new AtomicInteger();
+    private EventPool<?> pool;
+
+    /** Called by the pool when the event is created, or claimed, for a new publication */
+    final void claimed(EventPool<?> owner) {
+        this.pool = owner;
+        refCount.set(1);
+    }
+
+    /** Returns true if the event was claimed from a pool, the buses only counting the references to such events */
+    final boolean isClaimed() {
+        return pool != null;
+    }
+
+    /**
+     * Adds a reference to this event, which is not recycled until the reference is released.
+     * @return this event
+     * @throws IllegalStateException if the event was already released to its pool
+     */
+    public final PooledEvent retain() {
+        if (!tryRetain()) {
+            throw new IllegalStateException("Event " + this + " already released to its pool");
+        }
+        return this;
+    }
+
+    /**
+     * Adds a reference to this event if it was not released to its pool yet.
+     * @return true if the reference was added, false if the event was already released
+     */
+    public final boolean tryRetain() {
+        var current = refCount.get();
+        while (current > 0) {
+            if (refCount.compareAndSet(current, current + 1)) {
+                return true;
+            }
+            current = refCount.get();
+        }
+        return false;
+    }
+
+    /**
+     * Releases a reference to this event, returning it to its pool when the last reference is released.
+     * @throws IllegalStateException if the event was already released to its pool
+     */
+    public final void release() {
+        var remaining = refCount.decrementAndGet();
+        if (remaining < 0) {
+            refCount.incrementAndGet();
+            throw new IllegalStateException("Event " + this + " already released to its pool");
+        }
+        if (remaining == 0) {
+            reset();
+            pool.recycle(this);
+        }
+    }
+
+    /**
+     * Returns the number of references currently held on this event, 0 once it has been returned to its pool.
+     * @return the number of references currently held on this event
+     */
+    public final int getRefCount() {
+        return refCount.get();
+    }
+
+    /**
+     * Clears the state of the event before it is returned to its pool, by default does nothing. <br>
+     * Implementations holding references to other objects should clear them so that they can be garbage collected.
+     */
+    protected void reset() {
+    }
+}
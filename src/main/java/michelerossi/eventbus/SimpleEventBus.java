@@ -3,26 +3,47 @@ package michelerossi.eventbus;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
+import jdk.jfr.EventType;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Single-threaded implementation of {@link EventBus} which notifies events on the thread calling the {@link #publishEvent(Object)} method. <br>
  * This implementation is thread-safe and allows to have the subscriptions done concurrently and on threads different from the one publishing events. <br>
- * The publishing and filtering based on the subscriber predicate are performed on the publisher thread.
+ * The publishing and filtering based on the subscriber predicate are performed on the publisher thread. <br>
+ * A {@link PooledEvent} is returned to its pool once it has been delivered to all the subscribers. Once the subscribers
+ * of an event type are resolved, publishing allocates nothing unless the {@link DispatchEvent} flight recorder event is
+ * enabled.
  */
 @Slf4j
 public class SimpleEventBus implements EventBus {
+    private static final EventType DISPATCH_EVENT_TYPE = EventType.getEventType(DispatchEvent.class);
+
     final Collection<SubscriberWithPredicate<?>> subscribers = new HashSet<>();
-    private final Map<Class<?>, Collection<SubscriberWithPredicate<?>>> resolvedSubscribers = new HashMap<>();
+    private final Map<Class<?>, List<SubscriberWithPredicate<?>>> resolvedSubscribers = new HashMap<>();
 
-    @SuppressWarnings({"unchecked", "rawtypes"})
+    @SuppressWarnings({"rawtypes"})
     static void dispatchEventToSub(Object event, SubscriberWithPredicate subscriber) {
+        dispatchEventToSub(event, subscriber, 0);
+    }
+
+    /**
+     * Delivers the event to the subscriber, recording the delivery as a {@link DispatchEvent}.
+     * @param queueWaitNanos the time the event was queued for before being delivered, 0 if it was not queued
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static void dispatchEventToSub(Object event, SubscriberWithPredicate subscriber, long queueWaitNanos) {
         var debugEnabled = log.isDebugEnabled();
+        // only allocated while recording, so that deliveries do not produce garbage
+        var dispatchEvent = DISPATCH_EVENT_TYPE.isEnabled() ? new DispatchEvent() : null;
+        if (dispatchEvent != null) {
+            dispatchEvent.begin();
+        }
         try {
             var ts0 = debugEnabled ? System.currentTimeMillis() : 0;
             subscriber.consumer().accept(event);
@@ -30,13 +51,35 @@ public class SimpleEventBus implements EventBus {
                 log.debug("Event {} dispatched to {} in {} ms", event, subscriber, System.currentTimeMillis() - ts0);
             }
         } catch (Exception ex) {
+            if (dispatchEvent != null) {
+                dispatchEvent.failed = true;
+            }
             log.error("Exception while attempting to dispatch event {} to subscriber {}", event, subscriber);
         }
+        if (dispatchEvent == null) {
+            return;
+        }
+        dispatchEvent.end();
+        if (dispatchEvent.shouldCommit()) {
+            dispatchEvent.eventType = event.getClass();
+            dispatchEvent.subscriber = subscriber.toString();
+            dispatchEvent.queueWait = queueWaitNanos;
+            dispatchEvent.commit();
+        }
     }
 
-    @SuppressWarnings({"unchecked", "rawtypes"})
-    private static Predicate<SubscriberWithPredicate> passesSubscriberFilter(Object event) {
-        return subscriber -> subscriber.eventFilter().test(event);
+    /** Adds a reference for a queued delivery if the event is a {@link PooledEvent} claimed from a pool */
+    static void retainIfPooled(Object event) {
+        if (event instanceof PooledEvent pooledEvent && pooledEvent.isClaimed()) {
+            pooledEvent.retain();
+        }
+    }
+
+    /** Releases the reference held by the bus if the event is a {@link PooledEvent} claimed from a pool */
+    static void releaseIfPooled(Object event) {
+        if (event instanceof PooledEvent pooledEvent && pooledEvent.isClaimed()) {
+            pooledEvent.release();
+        }
     }
 
     /** @inheritDoc */
@@ -68,20 +111,34 @@ public class SimpleEventBus implements EventBus {
         log.info("{} subscribed to {} events with filter {}", subscriber, clazz, eventFilter);
     }
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
     void publishEventImpl(Object event, boolean coalesce) {
         var clazz = event.getClass();
-        Collection<SubscriberWithPredicate<?>> subscribersForClass;
+        List<SubscriberWithPredicate<?>> subscribersForClass;
         synchronized (this) {
-            subscribersForClass = resolvedSubscribers.computeIfAbsent(clazz, clz -> subscribers.stream().filter(sub -> sub.clazz().isAssignableFrom(clazz)).toList());
+            // a lookup first: computeIfAbsent would allocate the function even when the subscribers are resolved
+            subscribersForClass = resolvedSubscribers.get(clazz);
+            if (subscribersForClass == null) {
+                subscribersForClass = resolvedSubscribers.computeIfAbsent(clazz, this::resolveSubscribers);
+            }
         }
 
-        subscribersForClass
-            .stream()
-            .filter(passesSubscriberFilter(event))
-            .forEach(subscriber -> {
-                log.trace("Dispatching event {} to {} coalescing {}", event, subscriber, coalesce);
+        // an indexed loop rather than a stream or an iterator: publishing should not allocate, see PooledEvent
+        for (int i = 0; i < subscribersForClass.size(); i++) {
+            SubscriberWithPredicate subscriber = subscribersForClass.get(i);
+            if (subscriber.eventFilter().test(event)) {
+                if (log.isTraceEnabled()) {
+                    log.trace("Dispatching event {} to {} coalescing {}", event, subscriber, coalesce);
+                }
                 dispatch(event, subscriber, coalesce);
-            });
+            }
+        }
+        // the reference of the publisher, queued deliveries holding their own
+        releaseIfPooled(event);
+    }
+
+    private List<SubscriberWithPredicate<?>> resolveSubscribers(Class<?> clazz) {
+        return subscribers.stream().filter(sub -> sub.clazz().isAssignableFrom(clazz)).toList();
     }
 
     @SuppressWarnings({"rawtypes"})
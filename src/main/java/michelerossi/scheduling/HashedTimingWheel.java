@@ -0,0 +1,276 @@
+package michelerossi.scheduling;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import michelerossi.Stoppable;
+
+/**
+ * A hashed timing wheel: a timer meant to be shared by many components scheduling tasks with a coarse precision,
+ * e.g. all the throttlers of an application sampling their hits every second. <br>
+ * Time is divided in ticks and the wheel is an array of buckets, a task due in N ticks being stored in the bucket
+ * <code>(currentTick + N) % wheelSize</code> together with the number of full wheel rounds left. Scheduling and cancelling are O(1):
+ * new and cancelled tasks are handed over to the ticking thread through lock-free queues, and each bucket is a doubly
+ * linked list. A single thread per wheel advances the ticks and runs the expired tasks, which must therefore be short. <br>
+ * Tasks run with a delay of up to one tick compared to their deadline.
+ */
+@Slf4j
+public class HashedTimingWheel implements Stoppable {
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long tickNanos;
+    private final long startNanos;
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final Thread tickThread;
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * Constructor, starting the ticking thread
+     * @param name         the name of the wheel, used to name its thread
+     * @param tickDuration the duration of a tick, i.e. the precision of the wheel
+     * @param timeUnit     the time unit of tickDuration
+     * @param wheelSize    the number of buckets, rounded up to the next power of two
+     */
+    public HashedTimingWheel(@NonNull String name, long tickDuration, @NonNull TimeUnit timeUnit, int wheelSize) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickDuration and wheelSize must be positive");
+        }
+        var numBuckets = 1 << (32 - Integer.numberOfLeadingZeros(wheelSize - 1));
+        this.wheel = new Bucket[numBuckets];
+        for (int i = 0; i < numBuckets; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = numBuckets - 1;
+        this.tickNanos = timeUnit.toNanos(tickDuration);
+        this.startNanos = System.nanoTime();
+        this.tickThread = new Thread(this::runTicks, "TimingWheel-" + name);
+        this.tickThread.setDaemon(true);
+        this.tickThread.start();
+    }
+
+    /**
+     * Schedules the specified task to run once after the specified delay.
+     * @param task     the task to run
+     * @param delay    the delay
+     * @param timeUnit the time unit of delay
+     * @return a handle which can be used to cancel the task
+     */
+    public Timeout schedule(@NonNull Runnable task, long delay, @NonNull TimeUnit timeUnit) {
+        return scheduleTimeout(task, timeUnit.toNanos(delay), 0);
+    }
+
+    /**
+     * Schedules the specified task to run periodically, the first time after initialDelay and then every period.
+     * @param task         the task to run
+     * @param initialDelay the delay before the first run
+     * @param period       the period between two runs
+     * @param timeUnit     the time unit of initialDelay and period
+     * @return a handle which can be used to cancel the task
+     */
+    public Timeout scheduleAtFixedRate(@NonNull Runnable task, long initialDelay, long period, @NonNull TimeUnit timeUnit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        return scheduleTimeout(task, timeUnit.toNanos(initialDelay), timeUnit.toNanos(period));
+    }
+
+    /**
+     * Stops the ticking thread. Tasks not run yet are discarded.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        tickThread.interrupt();
+        log.info("{} stopped", tickThread.getName());
+    }
+
+    private Timeout scheduleTimeout(Runnable task, long delayNanos, long periodNanos) {
+        if (!running) {
+            throw new IllegalStateException(tickThread.getName() + " is stopped");
+        }
+        var timeout = new Timeout(this, task, System.nanoTime() - startNanos + Math.max(0, delayNanos), periodNanos);
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    private void runTicks() {
+        var expired = new ArrayList<Timeout>();
+        while (running) {
+            var tickDeadline = tickNanos * (tick + 1);
+            var sleepNanos = tickDeadline - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                LockSupport.parkNanos(this, sleepNanos);
+                continue;
+            }
+            removeCancelled();
+            transferPending();
+            wheel[(int) (tick & mask)].collectExpired(tickDeadline, expired);
+            for (var timeout : expired) {
+                timeout.run();
+                if (timeout.periodNanos > 0 && !timeout.isCancelled()) {
+                    timeout.deadline += timeout.periodNanos;
+                    place(timeout, tick + 1);
+                }
+            }
+            expired.clear();
+            tick++;
+        }
+        log.debug("{} terminating", Thread.currentThread().getName());
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if (!timeout.isCancelled()) {
+                place(timeout, tick);
+            }
+        }
+    }
+
+    /** Places the timeout in the bucket of its due tick, minTick being the first tick whose bucket is still to be visited */
+    private void place(Timeout timeout, long minTick) {
+        var dueTick = Math.max(minTick, (timeout.deadline + tickNanos - 1) / tickNanos - 1);
+        timeout.remainingRounds = (dueTick - minTick) / wheel.length;
+        wheel[(int) (dueTick & mask)].add(timeout);
+    }
+
+    /**
+     * A task scheduled on a {@link HashedTimingWheel}.
+     */
+    public static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private static final VarHandle STATE;
+
+        static {
+            try {
+                STATE = MethodHandles.lookup().findVarHandle(Timeout.class, "state", int.class);
+            } catch (ReflectiveOperationException ex) {
+                throw new ExceptionInInitializerError(ex);
+            }
+        }
+
+        private final HashedTimingWheel timingWheel;
+        private final Runnable task;
+        private final long periodNanos;
+        private long deadline;
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+
+        @SuppressWarnings("unused")
+        private volatile int state;
+
+        private Timeout(HashedTimingWheel timingWheel, Runnable task, long deadline, long periodNanos) {
+            this.timingWheel = timingWheel;
+            this.task = task;
+            this.deadline = deadline;
+            this.periodNanos = periodNanos;
+        }
+
+        /**
+         * Cancels the task. A task already running is not interrupted but a periodic task will not run again.
+         * @return true if the task was cancelled by this call, false if it was already cancelled or has already run
+         */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+                return false;
+            }
+            timingWheel.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        /**
+         * Returns true if the task has been cancelled.
+         * @return true if the task has been cancelled
+         */
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        /** Marks a one-off task as expired, returns false if it has been cancelled meanwhile */
+        private boolean expire() {
+            return periodNanos > 0 ? state == PENDING : STATE.compareAndSet(this, PENDING, EXPIRED);
+        }
+
+        private void run() {
+            try {
+                task.run();
+            } catch (Exception ex) {
+                log.error("Exception while running timing wheel task {}", task, ex);
+            }
+        }
+    }
+
+    /** A doubly linked list of timeouts, only accessed by the ticking thread */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.previous = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.previous == null) {
+                head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.bucket = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+
+        /** Removes the timeouts due by the specified deadline and decrements the rounds of the others */
+        private void collectExpired(long tickDeadline, ArrayList<Timeout> expired) {
+            var timeout = head;
+            while (timeout != null) {
+                var next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= tickDeadline) {
+                    remove(timeout);
+                    if (timeout.expire()) {
+                        expired.add(timeout);
+                    }
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
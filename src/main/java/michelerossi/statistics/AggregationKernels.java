@@ -0,0 +1,23 @@
+package michelerossi.statistics;
+
+/**
+ * Aggregation kernels over arrays of <code>int</code> samples, implemented with plain loops by {@link ScalarAggregationKernels}
+ * and with the incubating JDK Vector API by <code>VectorAggregationKernels</code>, only built with the <code>vector</code>
+ * Maven profile. See {@link WindowAggregations}.
+ */
+interface AggregationKernels {
+
+    long sum(int[] samples);
+
+    int min(int[] samples);
+
+    int max(int[] samples);
+
+    /**
+     * Counts, for each of the specified bounds, the samples lower than the bound.
+     * @param samples the samples
+     * @param bounds  the bounds
+     * @return the number of samples lower than each bound
+     */
+    int[] countBelow(int[] samples, int[] bounds);
+}
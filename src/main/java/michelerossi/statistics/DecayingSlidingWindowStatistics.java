@@ -0,0 +1,297 @@
+package michelerossi.statistics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import michelerossi.eventbus.EventBus;
+
+/**
+ * An implementation of {@link SlidingWindowStatistics} where the 'window' is exponentially decaying rather than a fixed
+ * number of samples: the weight of a sample halves every <code>halfLife</code>, so the statistics reflect the recent
+ * behaviour while the memory used and the cost of adding a sample do not depend on the length of the history. <br>
+ * Samples are weighted with forward decay: a sample added at time <code>t</code> gets the weight
+ * <code>exp((t - L) / tau)</code> relative to a landmark time <code>L</code>, so that adding a sample never updates the
+ * weights of the previous ones. The weighted sums giving the mean and variance and the weights of the buckets of a
+ * log-linear histogram giving the mode, minimum, maximum and percentiles are kept in an {@link AtomicLongArray} of
+ * <code>double</code> bits updated with compare-and-set: {@link #add(int)} is constant-time and lock-free. <br>
+ * The histogram has exact buckets for the values between -32 and 31 and 16 buckets per power of two beyond, so the mode,
+ * minimum, maximum and percentiles are within 1/16 of the actual samples. Samples whose weight decayed below a billionth
+ * of the total, about 30 half-lives old, are ignored by the minimum, maximum and percentiles. <br>
+ * Before the weights overflow, about every 144 half-lives, the sums are rescaled to a new landmark. A sample added
+ * concurrently with the rescaling may be lost. Statistics read while samples are added concurrently may include a
+ * sample in some of the sums only. <br>
+ * Like the default mode of {@link SlidingWindowStatisticsImpl} statistics are published for every sample; they can be
+ * used in place of a sliding window, e.g. by a {@link michelerossi.throttling.TimeBasedThrottler}. The published
+ * statistics read the weighted sums and the histogram together the first time one of their values is requested, so
+ * that adding a sample stays cheap and all the values of a statistics object describe the same samples.
+ */
+public class DecayingSlidingWindowStatistics implements SlidingWindowStatistics {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS_PER_SIGN = (Integer.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final int WEIGHT = 0;
+    private static final int WEIGHTED_SUM = 1;
+    private static final int WEIGHTED_SQUARES = 2;
+    private static final int HISTOGRAM = 3;
+    private static final int NUM_CELLS = HISTOGRAM + 2 * BUCKETS_PER_SIGN;
+    private static final double RESCALE_AGE = 100;
+    private static final double NEGLIGIBLE_WEIGHT = 1e-9;
+
+    private final EventBus eventBus;
+    private final double meanLifetimeNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicReference<Landmark> landmark;
+
+    /**
+     * Constructor
+     * @param eventBus the eventBus to use to dispatch statistics objects asynchronously
+     * @param halfLife the time after which the weight of a sample is halved
+     * @param timeUnit the time unit of halfLife
+     */
+    public DecayingSlidingWindowStatistics(EventBus eventBus, long halfLife, TimeUnit timeUnit) {
+        this(eventBus, halfLife, timeUnit, System::nanoTime);
+    }
+
+    DecayingSlidingWindowStatistics(EventBus eventBus, long halfLife, TimeUnit timeUnit, LongSupplier nanoClock) {
+        if (halfLife <= 0) {
+            throw new IllegalArgumentException("Invalid half-life " + halfLife);
+        }
+        this.eventBus = eventBus;
+        this.meanLifetimeNanos = timeUnit.toNanos(halfLife) / Math.log(2);
+        this.nanoClock = nanoClock;
+        this.landmark = new AtomicReference<>(new Landmark(nanoClock.getAsLong(), new AtomicLongArray(NUM_CELLS)));
+    }
+
+    /** Returns the index of the histogram bucket of the value, buckets being ordered like their values */
+    static int bucketIndex(int value) {
+        return value >= 0
+            ? BUCKETS_PER_SIGN + magnitudeBucket(value)
+            : BUCKETS_PER_SIGN - 1 - magnitudeBucket(-(value + 1));
+    }
+
+    /** Returns the value representing the histogram bucket, in the middle of the values falling in the bucket */
+    static int bucketValue(int bucketIndex) {
+        return bucketIndex >= BUCKETS_PER_SIGN
+            ? magnitudeValue(bucketIndex - BUCKETS_PER_SIGN)
+            : -magnitudeValue(BUCKETS_PER_SIGN - 1 - bucketIndex) - 1;
+    }
+
+    private static int magnitudeBucket(int magnitude) {
+        if (magnitude < SUB_BUCKETS) {
+            return magnitude;
+        }
+        var exponent = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(magnitude);
+        var shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + ((magnitude >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    private static int magnitudeValue(int magnitudeBucket) {
+        var block = magnitudeBucket >>> SUB_BUCKET_BITS;
+        var subBucket = magnitudeBucket & (SUB_BUCKETS - 1);
+        if (block == 0) {
+            return subBucket;
+        }
+        var lowest = (SUB_BUCKETS + subBucket) << (block - 1);
+        return lowest + ((1 << (block - 1)) >>> 1);
+    }
+
+    private static void addDouble(AtomicLongArray cells, int index, double delta) {
+        var current = cells.get(index);
+        while (!cells.compareAndSet(index, current, Double.doubleToRawLongBits(Double.longBitsToDouble(current) + delta))) {
+            current = cells.get(index);
+        }
+    }
+
+    private static double getDouble(AtomicLongArray cells, int index) {
+        return Double.longBitsToDouble(cells.get(index));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void add(int measurement) {
+        var now = nanoClock.getAsLong();
+        var current = landmark.get();
+        var age = (now - current.nanos()) / meanLifetimeNanos;
+        if (age > RESCALE_AGE) {
+            current = rescale(current, now);
+            age = (now - current.nanos()) / meanLifetimeNanos;
+        }
+        var weight = Math.exp(age);
+        var cells = current.cells();
+        addDouble(cells, WEIGHT, weight);
+        addDouble(cells, WEIGHTED_SUM, weight * measurement);
+        addDouble(cells, WEIGHTED_SQUARES, weight * measurement * (double) measurement);
+        addDouble(cells, HISTOGRAM + bucketIndex(measurement), weight);
+        eventBus.publishEvent(new DecayedStatistics(cells));
+    }
+
+    private Landmark rescale(Landmark current, long now) {
+        var factor = Math.exp(-(now - current.nanos()) / meanLifetimeNanos);
+        var rescaledCells = new AtomicLongArray(NUM_CELLS);
+        for (int i = 0; i < NUM_CELLS; i++) {
+            rescaledCells.set(i, Double.doubleToRawLongBits(getDouble(current.cells(), i) * factor));
+        }
+        var rescaled = new Landmark(now, rescaledCells);
+        return landmark.compareAndSet(current, rescaled) ? rescaled : landmark.get();
+    }
+
+    /**
+     * Discards the history and restarts from the specified measurement, as a sliding window filled with it would.
+     * @param measurement the measurement to restart from
+     */
+    @Override
+    public void fillBuffer(int measurement) {
+        landmark.set(new Landmark(nanoClock.getAsLong(), new AtomicLongArray(NUM_CELLS)));
+        add(measurement);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void subscribeForStatistics(Consumer<Statistics> statisticsConsumer) {
+        eventBus.addSubscriber(Statistics.class, statisticsConsumer);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public DecayedStatistics getLatestStatistics() {
+        var cells = landmark.get().cells();
+        if (getDouble(cells, WEIGHT) <= 0) {
+            return null;
+        }
+        return new DecayedStatistics(cells);
+    }
+
+    private record Landmark(long nanos, AtomicLongArray cells) {
+    }
+
+    /**
+     * Statistics of the decayed samples. <br>
+     * The weighted sums and the histogram are read together the first time any value is requested, and all the values
+     * are calculated from that snapshot: they include the samples added between the publication and the first request,
+     * unless the history was rescaled or discarded in the meantime, and no sample added later.
+     */
+    public static final class DecayedStatistics implements Statistics {
+        private final AtomicLongArray cells;
+        private volatile Snapshot snapshot;
+
+        private DecayedStatistics(AtomicLongArray cells) {
+            this.cells = cells;
+        }
+
+        private Snapshot snapshot() {
+            var current = snapshot;
+            if (current == null) {
+                synchronized (this) {
+                    current = snapshot;
+                    if (current == null) {
+                        current = new Snapshot(cells);
+                        snapshot = current;
+                    }
+                }
+            }
+            return current;
+        }
+
+        @Override
+        public double getMean() {
+            return snapshot().mean;
+        }
+
+        /**
+         * Returns the variance of the decayed samples.
+         * @return the variance of the decayed samples
+         */
+        public double getVariance() {
+            return snapshot().variance;
+        }
+
+        /**
+         * Returns the standard deviation of the decayed samples.
+         * @return the standard deviation of the decayed samples
+         */
+        public double getStandardDeviation() {
+            return Math.sqrt(getVariance());
+        }
+
+        @Override
+        public int getMode() {
+            return snapshot().mode;
+        }
+
+        @Override
+        public int getMin() {
+            return snapshot().min;
+        }
+
+        @Override
+        public int getMax() {
+            return snapshot().max;
+        }
+
+        @Override
+        public int getPctile(int pctile) {
+            return snapshot().getPctile(pctile);
+        }
+    }
+
+    /** The weighted sums and the weights of the histogram buckets read at once, with the statistics derived from them */
+    private static final class Snapshot {
+        private final double mean;
+        private final double variance;
+        private final double[] bucketWeights;
+        private final double negligibleWeight;
+        private final double histogramWeight;
+        private final int mode;
+        private final int min;
+        private final int max;
+
+        private Snapshot(AtomicLongArray cells) {
+            var totalWeight = getDouble(cells, WEIGHT);
+            this.mean = getDouble(cells, WEIGHTED_SUM) / totalWeight;
+            this.variance = Math.max(0, getDouble(cells, WEIGHTED_SQUARES) / totalWeight - mean * mean);
+            var bucketWeights = new double[2 * BUCKETS_PER_SIGN];
+            for (int i = 0; i < bucketWeights.length; i++) {
+                bucketWeights[i] = getDouble(cells, HISTOGRAM + i);
+            }
+            this.bucketWeights = bucketWeights;
+            var histogramWeight = 0.0;
+            var modeBucket = 0;
+            for (int i = 0; i < bucketWeights.length; i++) {
+                histogramWeight += bucketWeights[i];
+                if (bucketWeights[i] > bucketWeights[modeBucket]) {
+                    modeBucket = i;
+                }
+            }
+            this.histogramWeight = histogramWeight;
+            this.negligibleWeight = histogramWeight * NEGLIGIBLE_WEIGHT;
+            var minBucket = 0;
+            while (minBucket < bucketWeights.length - 1 && bucketWeights[minBucket] <= negligibleWeight) {
+                minBucket++;
+            }
+            var maxBucket = bucketWeights.length - 1;
+            while (maxBucket > minBucket && bucketWeights[maxBucket] <= negligibleWeight) {
+                maxBucket--;
+            }
+            this.mode = bucketValue(modeBucket);
+            this.min = bucketValue(minBucket);
+            this.max = bucketValue(maxBucket);
+        }
+
+        private int getPctile(int pctile) {
+            var rank = (pctile / 100.0) * histogramWeight;
+            var cumulativeWeight = 0.0;
+            for (int i = 0; i < bucketWeights.length; i++) {
+                if (bucketWeights[i] > negligibleWeight) {
+                    cumulativeWeight += bucketWeights[i];
+                    if (cumulativeWeight >= rank) {
+                        return bucketValue(i);
+                    }
+                }
+            }
+            return max;
+        }
+    }
+}
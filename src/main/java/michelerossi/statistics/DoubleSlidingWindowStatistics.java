@@ -0,0 +1,50 @@
+package michelerossi.statistics;
+
+import java.util.function.Consumer;
+
+/**
+ * The <code>double</code> specialization of {@link SlidingWindowStatistics}. <br>
+ * Samples are kept as primitive <code>double</code> values so that no precision is lost by downcasting to <code>int</code>.
+ */
+public interface DoubleSlidingWindowStatistics {
+
+    /**
+     * Adds the specified measurement to the sliding window samples set.
+     * @param measurement the measurement to add to the samples set
+     */
+    void add(double measurement);
+
+    /**
+     * Fills the internal sliding buffer with the current value.
+     * @param measurement the value to fill the buffer with
+     * @see SlidingWindowStatistics#fillBuffer(int)
+     */
+    void fillBuffer(double measurement);
+
+    /**
+     * Registers the specified consumer to receive statistics when they are available.
+     * @param statisticsConsumer the consumer receiving statistics
+     */
+    void subscribeForStatistics(Consumer<DoubleStatistics> statisticsConsumer);
+
+    /**
+     * the latest available statistics or null if no statistics are available
+     * @return the latest available statistics or null if no statistics are available
+     */
+    DoubleStatistics getLatestStatistics();
+
+    /**
+     * Holds a number of descriptive statistics values.
+     */
+    interface DoubleStatistics {
+        double getMean();
+
+        double getMode();
+
+        double getPctile(int pctile);
+
+        double getMin();
+
+        double getMax();
+    }
+}
@@ -0,0 +1,114 @@
+package michelerossi.statistics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import michelerossi.eventbus.EventBus;
+
+/**
+ * An implementation of {@link DoubleSlidingWindowStatistics} based on a {@link DoubleShiftBuffer}
+ * which uses an {@link EventBus} to deliver statistics asynchronously. <br>
+ * The mode is found by scanning the sorted samples, so no boxed frequency map is needed.
+ */
+public class DoubleSlidingWindowStatisticsImpl implements DoubleSlidingWindowStatistics {
+    private final DoubleShiftBuffer shiftBuffer;
+    private final AtomicReference<DoubleStatistics> latestStats = new AtomicReference<>();
+    private final EventBus eventBus;
+
+    /**
+     * Constructor
+     * @param eventBus   the eventBus to use to dispatch statistics objects asynchronously
+     * @param numSamples the number of samples to use to calculate descriptive statistics
+     */
+    public DoubleSlidingWindowStatisticsImpl(EventBus eventBus, int numSamples) {
+        this.shiftBuffer = new DoubleShiftBuffer(numSamples);
+        this.eventBus = eventBus;
+    }
+
+    private static DoubleStatistics calculateStats(double[] samples) {
+        Arrays.sort(samples);
+        var mean = findMean(samples);
+        var mode = findMode(samples);
+        return new DoubleStatistics() {
+            @Override
+            public double getMean() {
+                return mean;
+            }
+
+            @Override
+            public double getMode() {
+                return mode;
+            }
+
+            @Override
+            public double getPctile(int pctile) {
+                var rank = (int) Math.floor((pctile / 100.0) * (samples.length + 1));
+                return samples[Math.max(0, Math.min(samples.length, rank) - 1)];
+            }
+
+            @Override
+            public double getMin() {
+                return samples[0];
+            }
+
+            @Override
+            public double getMax() {
+                return samples[samples.length - 1];
+            }
+        };
+    }
+
+    private static double findMean(double[] array) {
+        var total = 0.0;
+        for (double num : array) {
+            total += num;
+        }
+        return total / array.length;
+    }
+
+    private static double findMode(double[] sortedArray) {
+        var mode = sortedArray[0];
+        var maxFrequency = 0;
+        var runLength = 0;
+        for (int i = 0; i < sortedArray.length; i++) {
+            runLength = i > 0 && sortedArray[i] == sortedArray[i - 1] ? runLength + 1 : 1;
+            if (runLength > maxFrequency) {
+                maxFrequency = runLength;
+                mode = sortedArray[i];
+            }
+        }
+        return mode;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void add(double measurement) {
+        this.shiftBuffer.add(measurement);
+        if (this.shiftBuffer.getBufferSize() == this.shiftBuffer.getCurrentSize()) {
+            var stats = calculateStats(this.shiftBuffer.getSamples());
+            latestStats.set(stats);
+            eventBus.publishEvent(stats);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void fillBuffer(double measurement) {
+        for (int i = 0; i < this.shiftBuffer.getBufferSize(); i++) {
+            add(measurement);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void subscribeForStatistics(Consumer<DoubleStatistics> statisticsConsumer) {
+        eventBus.addSubscriber(DoubleStatistics.class, statisticsConsumer);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public DoubleStatistics getLatestStatistics() {
+        return latestStats.get();
+    }
+}
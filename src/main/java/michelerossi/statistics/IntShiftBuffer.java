@@ -8,7 +8,7 @@ import lombok.Getter;
  * garbage collection impact since the array is only allocated once.
  * This implementation is thread-safe and can be shared among different threads without requiring any additional synchronization.
  */
-public class IntShiftBuffer {
+public class IntShiftBuffer implements IntWindowBuffer {
     private final int[] values;
 
     @Getter
@@ -29,14 +29,18 @@ public class IntShiftBuffer {
     /**
      * Adds a new sample to the shift buffer
      * @param value the int value to add to the shift buffer
+     * @return the sample evicted from the buffer to make room for the new value, 0 while the buffer is not full yet
      */
-    public void add(int value) {
+    @Override
+    public int add(int value) {
         synchronized (this) {
+            var evicted = values[currentIndex];
             values[currentIndex] = value;
             currentIndex = (currentIndex + 1) % bufferSize;
             if (totalNumItems < this.bufferSize) {
                 totalNumItems++;
             }
+            return evicted;
         }
     }
 
@@ -44,20 +48,27 @@ public class IntShiftBuffer {
      * Returns a copy of the current set of samples
      * @return a copy of the current set of samples
      */
+    @Override
     public int[] getSamples() {
         var windowSamples = new int[bufferSize];
+        copySamplesTo(windowSamples);
+        return windowSamples;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void copySamplesTo(int[] target) {
         synchronized (this) {
-            for (int i = 0; i < bufferSize; i++) {
-                windowSamples[i] = values[(currentIndex + i) % bufferSize];
-            }
+            System.arraycopy(values, currentIndex, target, 0, bufferSize - currentIndex);
+            System.arraycopy(values, 0, target, bufferSize - currentIndex, currentIndex);
         }
-        return windowSamples;
     }
 
     /**
      * Returns the current number of samples present in the buffer.
      * @return the current number of samples present in the buffer
      */
+    @Override
     public int getCurrentSize() {
         synchronized (this) {
             return totalNumItems;
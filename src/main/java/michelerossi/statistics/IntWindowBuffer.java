@@ -0,0 +1,41 @@
+package michelerossi.statistics;
+
+/**
+ * A fixed size shift-buffer of <code>int</code> samples, the oldest sample being evicted by each new sample once the buffer is full. <br>
+ * Implemented on the heap by {@link IntShiftBuffer} and off-heap by {@link OffHeapIntShiftBuffer}.
+ */
+public interface IntWindowBuffer {
+
+    /**
+     * Adds a new sample to the shift buffer
+     * @param value the int value to add to the shift buffer
+     * @return the sample evicted from the buffer to make room for the new value, 0 while the buffer is not full yet
+     */
+    int add(int value);
+
+    /**
+     * Returns a copy of the current set of samples, from the oldest to the newest
+     * @return a copy of the current set of samples
+     */
+    int[] getSamples();
+
+    /**
+     * Copies the current set of samples, from the oldest to the newest, to the specified array, without allocating a new one.
+     * @param target the array receiving the samples, at least {@link #getBufferSize()} long
+     */
+    default void copySamplesTo(int[] target) {
+        System.arraycopy(getSamples(), 0, target, 0, getBufferSize());
+    }
+
+    /**
+     * Returns the current number of samples present in the buffer.
+     * @return the current number of samples present in the buffer
+     */
+    int getCurrentSize();
+
+    /**
+     * Returns the number of samples the buffer holds once full.
+     * @return the number of samples the buffer holds once full
+     */
+    int getBufferSize();
+}
@@ -0,0 +1,110 @@
+package michelerossi.statistics;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import lombok.Getter;
+
+/**
+ * A lock-free variant of {@link IntShiftBuffer} for the common case of a single thread producing samples. <br>
+ * Samples are published through a sequence counter (seqlock): the writer makes the counter odd while it updates the
+ * array and even again once done, readers copy the samples optimistically and retry if the counter changed meanwhile.
+ * Readers therefore never block the sampling thread. <br>
+ * The backing array has a power-of-two capacity so that slots are addressed with a mask rather than a modulo. <br>
+ * Only one thread at a time may call {@link #add(int)}, any number of threads can read concurrently.
+ */
+public class LockFreeIntShiftBuffer {
+    private static final VarHandle SEQUENCE;
+
+    static {
+        try {
+            SEQUENCE = MethodHandles.lookup().findVarHandle(LockFreeIntShiftBuffer.class, "sequence", long.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final int[] values;
+    private final int mask;
+
+    @Getter
+    private final int bufferSize;
+
+    /** Even when the buffer is stable, odd while a write is in progress. The number of writes is sequence / 2 */
+    @SuppressWarnings("unused")
+    private volatile long sequence;
+
+    /**
+     * Constructor
+     * @param bufferSize the number of items to keep in the shift buffer (or sliding window)
+     */
+    public LockFreeIntShiftBuffer(int bufferSize) {
+        if (bufferSize <= 0 || bufferSize > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid buffer size " + bufferSize);
+        }
+        var capacity = 1 << (32 - Integer.numberOfLeadingZeros(bufferSize - 1));
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Adds a new sample to the shift buffer. Must only be called by a single writer thread.
+     * @param value the int value to add to the shift buffer
+     */
+    public void add(int value) {
+        var seq = (long) SEQUENCE.get(this);
+        SEQUENCE.setOpaque(this, seq + 1);
+        VarHandle.storeStoreFence();
+        values[(int) (seq >>> 1) & mask] = value;
+        SEQUENCE.setRelease(this, seq + 2);
+    }
+
+    /**
+     * Returns a copy of the current set of samples, oldest first, with the same layout as {@link IntShiftBuffer#getSamples()}
+     * @return a copy of the current set of samples
+     */
+    public int[] getSamples() {
+        var windowSamples = new int[bufferSize];
+        copyInto(windowSamples);
+        return windowSamples;
+    }
+
+    /**
+     * Copies a consistent snapshot of the current samples, oldest first, into the specified array. <br>
+     * Slots not yet written are reported as 0, as in {@link #getSamples()}.
+     * @param destination the array receiving the samples, its length must be at least {@link #getBufferSize()}
+     * @return the number of samples present in the buffer when the snapshot was taken
+     */
+    public int copyInto(int[] destination) {
+        if (destination.length < bufferSize) {
+            throw new IllegalArgumentException("Destination length " + destination.length + " is smaller than buffer size " + bufferSize);
+        }
+        while (true) {
+            var seqBefore = (long) SEQUENCE.getAcquire(this);
+            if ((seqBefore & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            var numWrites = seqBefore >>> 1;
+            var start = numWrites - bufferSize;
+            for (int i = 0; i < bufferSize; i++) {
+                var ix = start + i;
+                destination[i] = ix < 0 ? 0 : values[(int) ix & mask];
+            }
+            VarHandle.loadLoadFence();
+            if ((long) SEQUENCE.getOpaque(this) == seqBefore) {
+                return (int) Math.min(numWrites, bufferSize);
+            }
+        }
+    }
+
+    /**
+     * Returns the current number of samples present in the buffer.
+     * @return the current number of samples present in the buffer
+     */
+    public int getCurrentSize() {
+        var numWrites = ((long) SEQUENCE.getAcquire(this)) >>> 1;
+        return (int) Math.min(numWrites, bufferSize);
+    }
+}
@@ -0,0 +1,65 @@
+package michelerossi.statistics;
+
+import lombok.Getter;
+
+/**
+ * An array based implementation of a shift-buffer that supports only primitive long values. <br>
+ * This is the long counterpart of {@link IntShiftBuffer}: the array is only allocated once and values are never boxed.
+ * This implementation is thread-safe and can be shared among different threads without requiring any additional synchronization.
+ */
+public class LongShiftBuffer {
+    private final long[] values;
+
+    @Getter
+    private final int bufferSize;
+    private int currentIndex;
+    private int totalNumItems;
+
+    /**
+     * Constructor
+     * @param bufferSize the number of items to keep in the shift buffer (or sliding window)
+     */
+    public LongShiftBuffer(int bufferSize) {
+        this.values = new long[bufferSize];
+        this.bufferSize = bufferSize;
+        this.currentIndex = 0;
+    }
+
+    /**
+     * Adds a new sample to the shift buffer
+     * @param value the long value to add to the shift buffer
+     */
+    public void add(long value) {
+        synchronized (this) {
+            values[currentIndex] = value;
+            currentIndex = currentIndex + 1 == bufferSize ? 0 : currentIndex + 1;
+            if (totalNumItems < this.bufferSize) {
+                totalNumItems++;
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the current set of samples, oldest first
+     * @return a copy of the current set of samples
+     */
+    public long[] getSamples() {
+        var windowSamples = new long[bufferSize];
+        synchronized (this) {
+            var numTail = bufferSize - currentIndex;
+            System.arraycopy(values, currentIndex, windowSamples, 0, numTail);
+            System.arraycopy(values, 0, windowSamples, numTail, currentIndex);
+        }
+        return windowSamples;
+    }
+
+    /**
+     * Returns the current number of samples present in the buffer.
+     * @return the current number of samples present in the buffer
+     */
+    public int getCurrentSize() {
+        synchronized (this) {
+            return totalNumItems;
+        }
+    }
+}
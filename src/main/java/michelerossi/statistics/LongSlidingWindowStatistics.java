@@ -0,0 +1,50 @@
+package michelerossi.statistics;
+
+import java.util.function.Consumer;
+
+/**
+ * The <code>long</code> specialization of {@link SlidingWindowStatistics}. <br>
+ * Samples are kept as primitive <code>long</code> values so that no precision is lost by downcasting to <code>int</code>.
+ */
+public interface LongSlidingWindowStatistics {
+
+    /**
+     * Adds the specified measurement to the sliding window samples set.
+     * @param measurement the measurement to add to the samples set
+     */
+    void add(long measurement);
+
+    /**
+     * Fills the internal sliding buffer with the current value.
+     * @param measurement the value to fill the buffer with
+     * @see SlidingWindowStatistics#fillBuffer(int)
+     */
+    void fillBuffer(long measurement);
+
+    /**
+     * Registers the specified consumer to receive statistics when they are available.
+     * @param statisticsConsumer the consumer receiving statistics
+     */
+    void subscribeForStatistics(Consumer<LongStatistics> statisticsConsumer);
+
+    /**
+     * the latest available statistics or null if no statistics are available
+     * @return the latest available statistics or null if no statistics are available
+     */
+    LongStatistics getLatestStatistics();
+
+    /**
+     * Holds a number of descriptive statistics values.
+     */
+    interface LongStatistics {
+        double getMean();
+
+        long getMode();
+
+        long getPctile(int pctile);
+
+        long getMin();
+
+        long getMax();
+    }
+}
@@ -0,0 +1,114 @@
+package michelerossi.statistics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import michelerossi.eventbus.EventBus;
+
+/**
+ * An implementation of {@link LongSlidingWindowStatistics} based on a {@link LongShiftBuffer}
+ * which uses an {@link EventBus} to deliver statistics asynchronously. <br>
+ * The mode is found by scanning the sorted samples, so no boxed frequency map is needed.
+ */
+public class LongSlidingWindowStatisticsImpl implements LongSlidingWindowStatistics {
+    private final LongShiftBuffer shiftBuffer;
+    private final AtomicReference<LongStatistics> latestStats = new AtomicReference<>();
+    private final EventBus eventBus;
+
+    /**
+     * Constructor
+     * @param eventBus   the eventBus to use to dispatch statistics objects asynchronously
+     * @param numSamples the number of samples to use to calculate descriptive statistics
+     */
+    public LongSlidingWindowStatisticsImpl(EventBus eventBus, int numSamples) {
+        this.shiftBuffer = new LongShiftBuffer(numSamples);
+        this.eventBus = eventBus;
+    }
+
+    private static LongStatistics calculateStats(long[] samples) {
+        Arrays.sort(samples);
+        var mean = findMean(samples);
+        var mode = findMode(samples);
+        return new LongStatistics() {
+            @Override
+            public double getMean() {
+                return mean;
+            }
+
+            @Override
+            public long getMode() {
+                return mode;
+            }
+
+            @Override
+            public long getPctile(int pctile) {
+                var rank = (int) Math.floor((pctile / 100.0) * (samples.length + 1));
+                return samples[Math.max(0, Math.min(samples.length, rank) - 1)];
+            }
+
+            @Override
+            public long getMin() {
+                return samples[0];
+            }
+
+            @Override
+            public long getMax() {
+                return samples[samples.length - 1];
+            }
+        };
+    }
+
+    private static double findMean(long[] array) {
+        var total = 0.0;
+        for (long num : array) {
+            total += num;
+        }
+        return total / array.length;
+    }
+
+    private static long findMode(long[] sortedArray) {
+        var mode = sortedArray[0];
+        var maxFrequency = 0;
+        var runLength = 0;
+        for (int i = 0; i < sortedArray.length; i++) {
+            runLength = i > 0 && sortedArray[i] == sortedArray[i - 1] ? runLength + 1 : 1;
+            if (runLength > maxFrequency) {
+                maxFrequency = runLength;
+                mode = sortedArray[i];
+            }
+        }
+        return mode;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void add(long measurement) {
+        this.shiftBuffer.add(measurement);
+        if (this.shiftBuffer.getBufferSize() == this.shiftBuffer.getCurrentSize()) {
+            var stats = calculateStats(this.shiftBuffer.getSamples());
+            latestStats.set(stats);
+            eventBus.publishEvent(stats);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void fillBuffer(long measurement) {
+        for (int i = 0; i < this.shiftBuffer.getBufferSize(); i++) {
+            add(measurement);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void subscribeForStatistics(Consumer<LongStatistics> statisticsConsumer) {
+        eventBus.addSubscriber(LongStatistics.class, statisticsConsumer);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public LongStatistics getLatestStatistics() {
+        return latestStats.get();
+    }
+}
@@ -0,0 +1,224 @@
+package michelerossi.statistics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import michelerossi.statistics.SlidingWindowStatistics.Statistics;
+
+/**
+ * Keeps an independent sliding window of <code>int</code> samples for each key, e.g. latency per endpoint or per customer. <br>
+ * Compared to one {@link SlidingWindowStatisticsImpl} per key this store is meant to scale to tens of thousands of series:
+ * <ul>
+ *     <li>keys are spread over a fixed number of stripes, each stripe guarding its own map and series with a single monitor</li>
+ *     <li>each series is a plain <code>int[]</code> ring buffer, allocated once when the key is first seen</li>
+ *     <li>statistics are never published on an {@link michelerossi.eventbus.EventBus}, they are calculated on demand</li>
+ * </ul>
+ * Series which have not received samples for a while can be dropped with {@link #evictIdle(long, TimeUnit)},
+ * normally invoked periodically by a scheduled task. <br>
+ * This implementation is thread-safe.
+ * @param <K> the type of the series keys
+ */
+public class MultiSeriesStatistics<K> {
+    private final Stripe<K>[] stripes;
+    private final int stripeMask;
+
+    @Getter
+    private final int numSamples;
+
+    /**
+     * Constructor using a number of stripes proportional to the number of available processors
+     * @param numSamples the number of samples of each series used to calculate descriptive statistics
+     */
+    public MultiSeriesStatistics(int numSamples) {
+        this(numSamples, 4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor
+     * @param numSamples the number of samples of each series used to calculate descriptive statistics
+     * @param numStripes the number of stripes, rounded up to the next power of two
+     */
+    @SuppressWarnings("unchecked")
+    public MultiSeriesStatistics(int numSamples, int numStripes) {
+        if (numSamples <= 0 || numStripes <= 0) {
+            throw new IllegalArgumentException("Invalid numSamples " + numSamples + " or numStripes " + numStripes);
+        }
+        var stripesCount = 1 << (32 - Integer.numberOfLeadingZeros(numStripes - 1));
+        this.stripes = new Stripe[stripesCount];
+        for (int i = 0; i < stripesCount; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        this.stripeMask = stripesCount - 1;
+        this.numSamples = numSamples;
+    }
+
+    /**
+     * Adds the specified measurement to the series of the specified key, creating the series if needed.
+     * @param key         the series key
+     * @param measurement the measurement to add
+     */
+    public void add(@NonNull K key, int measurement) {
+        var now = System.nanoTime();
+        var stripe = stripeFor(key);
+        synchronized (stripe) {
+            stripe.series.computeIfAbsent(key, k -> new Series(numSamples)).add(measurement, now);
+        }
+    }
+
+    /**
+     * Returns statistics for the specified key.
+     * @param key the series key
+     * @return the statistics of the series or null if the series does not exist or is not full yet
+     */
+    public Statistics getStatistics(@NonNull K key) {
+        var samples = new int[numSamples];
+        return copySamples(key, samples) == numSamples ? SlidingWindowStatisticsImpl.calculateStats(samples) : null;
+    }
+
+    /**
+     * Copies the samples of the specified series, oldest first, into the specified array.
+     * @param key         the series key
+     * @param destination the array receiving the samples, its length must be at least {@link #getNumSamples()}
+     * @return the number of samples in the series, 0 if the series does not exist
+     * @throws IllegalArgumentException if the destination is shorter than {@link #getNumSamples()}
+     */
+    public int copySamples(@NonNull K key, @NonNull int[] destination) {
+        if (destination.length < numSamples) {
+            throw new IllegalArgumentException("Destination of length " + destination.length + " can not hold " + numSamples + " samples");
+        }
+        var stripe = stripeFor(key);
+        synchronized (stripe) {
+            var series = stripe.series.get(key);
+            return series == null ? 0 : series.copyInto(destination);
+        }
+    }
+
+    /**
+     * Calculates the statistics of all series having a full window.
+     * @return a map from key to statistics
+     */
+    public Map<K, Statistics> snapshot() {
+        var snapshot = new HashMap<K, Statistics>();
+        forEach(snapshot::put);
+        return snapshot;
+    }
+
+    /**
+     * Calculates the statistics of all series having a full window and passes them to the specified consumer. <br>
+     * Samples are copied while holding each stripe monitor, statistics are calculated and consumed outside of it.
+     * @param consumer the consumer of keys and statistics
+     */
+    public void forEach(@NonNull BiConsumer<? super K, ? super Statistics> consumer) {
+        var keys = new ArrayList<K>();
+        var samples = new ArrayList<int[]>();
+        for (var stripe : stripes) {
+            synchronized (stripe) {
+                stripe.series.forEach((key, series) -> {
+                    var seriesSamples = new int[numSamples];
+                    if (series.copyInto(seriesSamples) == numSamples) {
+                        keys.add(key);
+                        samples.add(seriesSamples);
+                    }
+                });
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                consumer.accept(keys.get(i), SlidingWindowStatisticsImpl.calculateStats(samples.get(i)));
+            }
+            keys.clear();
+            samples.clear();
+        }
+    }
+
+    /**
+     * Removes the series which did not receive any sample for at least the specified time.
+     * @param idleTime the idle time
+     * @param timeUnit the time unit of idleTime
+     * @return the number of series removed
+     */
+    public int evictIdle(long idleTime, @NonNull TimeUnit timeUnit) {
+        var idleNanos = timeUnit.toNanos(idleTime);
+        var now = System.nanoTime();
+        var numEvicted = 0;
+        for (var stripe : stripes) {
+            synchronized (stripe) {
+                var iterator = stripe.series.values().iterator();
+                while (iterator.hasNext()) {
+                    if (now - iterator.next().lastUpdateNanos >= idleNanos) {
+                        iterator.remove();
+                        numEvicted++;
+                    }
+                }
+            }
+        }
+        return numEvicted;
+    }
+
+    /**
+     * Removes the series of the specified key.
+     * @param key the series key
+     * @return true if the series existed
+     */
+    public boolean remove(@NonNull K key) {
+        var stripe = stripeFor(key);
+        synchronized (stripe) {
+            return stripe.series.remove(key) != null;
+        }
+    }
+
+    /**
+     * Returns the number of series currently held.
+     * @return the number of series currently held
+     */
+    public int size() {
+        var size = 0;
+        for (var stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.series.size();
+            }
+        }
+        return size;
+    }
+
+    private Stripe<K> stripeFor(K key) {
+        var hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & stripeMask];
+    }
+
+    private static final class Stripe<K> {
+        private final Map<K, Series> series = new HashMap<>();
+    }
+
+    /** A ring buffer of samples, only accessed while holding the monitor of its stripe */
+    private static final class Series {
+        private final int[] values;
+        private int currentIndex;
+        private int totalNumItems;
+        private long lastUpdateNanos;
+
+        private Series(int numSamples) {
+            this.values = new int[numSamples];
+        }
+
+        private void add(int value, long now) {
+            values[currentIndex] = value;
+            currentIndex = currentIndex + 1 == values.length ? 0 : currentIndex + 1;
+            if (totalNumItems < values.length) {
+                totalNumItems++;
+            }
+            lastUpdateNanos = now;
+        }
+
+        private int copyInto(int[] destination) {
+            var numTail = values.length - currentIndex;
+            System.arraycopy(values, currentIndex, destination, 0, numTail);
+            System.arraycopy(values, 0, destination, numTail, currentIndex);
+            return totalNumItems;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package michelerossi.statistics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import michelerossi.MappedBuffers;
+
+/**
+ * An implementation of {@link IntWindowBuffer} keeping the samples outside of the Java heap, in a direct or memory-mapped
+ * {@link ByteBuffer}: large windows do not add to the work of the garbage collector. <br>
+ * The buffer holds a small header (a magic number, the buffer size, the current index and the number of samples) followed
+ * by the samples, so that its whole state can be persisted and reloaded as is:
+ * <ul>
+ *     <li>{@link #snapshotTo(Path)} writes the buffer to a file straight from native memory, without copying it on the heap</li>
+ *     <li>{@link #loadSnapshot(Path)} reads such a file back into a direct buffer</li>
+ *     <li>{@link #mapFile(Path, int)} keeps the buffer in a memory-mapped file, so that every sample is persisted by the
+ *     operating system as it is added, and a restarted process resumes from the file</li>
+ * </ul>
+ * A {@link SlidingWindowStatisticsImpl} created on a full reloaded buffer has statistics available straight away, which lets
+ * a restarted {@link michelerossi.throttling.TimeBasedThrottler} resume its throttle state instead of refilling the window. <br>
+ * Samples are stored in the native byte order, snapshots are therefore meant to be reloaded on the same platform. <br>
+ * {@link #close()} unmaps a mapped file straight away rather than when the buffer is garbage collected, the buffer cannot
+ * be used afterwards. <br>
+ * This implementation is thread-safe like {@link IntShiftBuffer}.
+ */
+public class OffHeapIntShiftBuffer implements IntWindowBuffer, AutoCloseable {
+    private static final int MAGIC = 0x53484946;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int BUFFER_SIZE_OFFSET = 4;
+    private static final int CURRENT_INDEX_OFFSET = 8;
+    private static final int NUM_ITEMS_OFFSET = 12;
+    private static final int HEADER_SIZE = 16;
+
+    private final ByteBuffer buffer;
+    private final IntBuffer values;
+
+    @Getter
+    private final int bufferSize;
+    private int currentIndex;
+    private int totalNumItems;
+    private boolean closed;
+
+    private OffHeapIntShiftBuffer(ByteBuffer buffer, int bufferSize, boolean initialize) {
+        this.buffer = buffer.order(ByteOrder.nativeOrder());
+        this.bufferSize = bufferSize;
+        if (initialize) {
+            this.buffer.putInt(BUFFER_SIZE_OFFSET, bufferSize);
+            this.buffer.putInt(CURRENT_INDEX_OFFSET, 0);
+            this.buffer.putInt(NUM_ITEMS_OFFSET, 0);
+            this.buffer.putInt(MAGIC_OFFSET, MAGIC);
+        } else if (this.buffer.getInt(MAGIC_OFFSET) != MAGIC || this.buffer.getInt(BUFFER_SIZE_OFFSET) != bufferSize) {
+            throw new IllegalArgumentException("Not a shift buffer of " + bufferSize + " samples");
+        }
+        this.currentIndex = this.buffer.getInt(CURRENT_INDEX_OFFSET);
+        this.totalNumItems = this.buffer.getInt(NUM_ITEMS_OFFSET);
+        if (currentIndex < 0 || currentIndex >= bufferSize || totalNumItems < 0 || totalNumItems > bufferSize) {
+            throw new IllegalArgumentException("Corrupted shift buffer header, index " + currentIndex + " size " + totalNumItems);
+        }
+        this.values = this.buffer.slice(HEADER_SIZE, 4 * bufferSize).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    /**
+     * Creates an empty buffer in native memory.
+     * @param bufferSize the number of items to keep in the shift buffer (or sliding window)
+     * @return the buffer
+     */
+    public static OffHeapIntShiftBuffer allocateDirect(int bufferSize) {
+        checkBufferSize(bufferSize);
+        return new OffHeapIntShiftBuffer(ByteBuffer.allocateDirect(byteSize(bufferSize)), bufferSize, true);
+    }
+
+    /**
+     * Maps the specified file, resuming the samples it holds or creating an empty buffer if the file does not exist or is empty.
+     * @param file       the file backing the buffer
+     * @param bufferSize the number of items to keep in the shift buffer (or sliding window)
+     * @return the buffer
+     * @throws IllegalArgumentException if the file holds a buffer of a different size or is not a buffer file
+     */
+    public static OffHeapIntShiftBuffer mapFile(@NonNull Path file, int bufferSize) {
+        checkBufferSize(bufferSize);
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var existing = channel.size() > 0;
+            if (existing && channel.size() != byteSize(bufferSize)) {
+                throw new IllegalArgumentException("File " + file + " does not hold a shift buffer of " + bufferSize + " samples");
+            }
+            var mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, byteSize(bufferSize));
+            return new OffHeapIntShiftBuffer(mapped, bufferSize, !existing);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to map shift buffer file " + file, ex);
+        }
+    }
+
+    /**
+     * Loads a snapshot written by {@link #snapshotTo(Path)} into a new buffer in native memory.
+     * @param file the snapshot file
+     * @return the buffer, holding the samples of the snapshot
+     * @throws IllegalArgumentException if the file is not a snapshot
+     */
+    public static OffHeapIntShiftBuffer loadSnapshot(@NonNull Path file) {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("File " + file + " is not a shift buffer snapshot");
+            }
+            var loaded = ByteBuffer.allocateDirect((int) channel.size());
+            while (loaded.hasRemaining() && channel.read(loaded) >= 0) {
+                // read until the buffer is full or the end of the file
+            }
+            loaded.order(ByteOrder.nativeOrder());
+            var bufferSize = loaded.getInt(BUFFER_SIZE_OFFSET);
+            if (bufferSize <= 0 || byteSize(bufferSize) != loaded.capacity()) {
+                throw new IllegalArgumentException("File " + file + " is not a shift buffer snapshot");
+            }
+            return new OffHeapIntShiftBuffer(loaded, bufferSize, false);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to load shift buffer snapshot " + file, ex);
+        }
+    }
+
+    private static void checkBufferSize(int bufferSize) {
+        if (bufferSize <= 0 || bufferSize > (Integer.MAX_VALUE - HEADER_SIZE) / 4) {
+            throw new IllegalArgumentException("Invalid buffer size " + bufferSize);
+        }
+    }
+
+    private static int byteSize(int bufferSize) {
+        return HEADER_SIZE + 4 * bufferSize;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int add(int value) {
+        synchronized (this) {
+            checkNotClosed();
+            var evicted = values.get(currentIndex);
+            values.put(currentIndex, value);
+            currentIndex = (currentIndex + 1) % bufferSize;
+            buffer.putInt(CURRENT_INDEX_OFFSET, currentIndex);
+            if (totalNumItems < this.bufferSize) {
+                totalNumItems++;
+                buffer.putInt(NUM_ITEMS_OFFSET, totalNumItems);
+            }
+            return evicted;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int[] getSamples() {
+        var windowSamples = new int[bufferSize];
+        copySamplesTo(windowSamples);
+        return windowSamples;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void copySamplesTo(int[] target) {
+        synchronized (this) {
+            checkNotClosed();
+            values.get(currentIndex, target, 0, bufferSize - currentIndex);
+            values.get(0, target, bufferSize - currentIndex, currentIndex);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getCurrentSize() {
+        synchronized (this) {
+            checkNotClosed();
+            return totalNumItems;
+        }
+    }
+
+    /**
+     * Writes the whole buffer to the specified file, which can be reloaded with {@link #loadSnapshot(Path)}. <br>
+     * The samples are written from native memory by the file channel and the file is replaced atomically, a reader never
+     * sees a partially written snapshot. Adding samples is blocked while the snapshot is written.
+     * @param file the snapshot file
+     * @throws IllegalStateException if the buffer is closed
+     */
+    public void snapshotTo(@NonNull Path file) {
+        var tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (var channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                synchronized (this) {
+                    checkNotClosed();
+                    var source = buffer.duplicate();
+                    source.clear();
+                    while (source.hasRemaining()) {
+                        channel.write(source);
+                    }
+                }
+                channel.force(false);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to write shift buffer snapshot " + file, ex);
+        }
+    }
+
+    /**
+     * Closes the buffer: a memory-mapped file is written to disk and unmapped, so that it can be deleted or mapped again
+     * straight away. A buffer in native memory is freed when garbage collected. <br>
+     * Any later use of the buffer throws an {@link IllegalStateException}, closing it again has no effect.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (buffer instanceof MappedByteBuffer mapped) {
+                mapped.force();
+                MappedBuffers.unmap(mapped);
+            }
+        }
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("Shift buffer closed");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package michelerossi.statistics;
+
+import java.util.Arrays;
+
+import michelerossi.eventbus.PooledEvent;
+
+/**
+ * Mutable {@link SlidingWindowStatistics.Statistics} recycled through an {@link michelerossi.eventbus.EventPool} by
+ * {@link SlidingWindowStatisticsImpl} in pooled mode. <br>
+ * The samples array is allocated once with the event: the window samples are copied into it, the mean, minimum and
+ * maximum are aggregated straight away and the samples are only sorted in place when the mode or a percentile is requested.
+ */
+final class PooledStatistics extends PooledEvent implements SlidingWindowStatistics.Statistics {
+    final int[] samples;
+    private double mean;
+    private int min;
+    private int max;
+    private volatile boolean sorted;
+    private int mode;
+
+    PooledStatistics(int numSamples) {
+        this.samples = new int[numSamples];
+    }
+
+    /** Calculates the statistics of the samples copied into {@link #samples} */
+    void calculate() {
+        mean = (double) WindowAggregations.sum(samples) / samples.length;
+        min = WindowAggregations.min(samples);
+        max = WindowAggregations.max(samples);
+        sorted = false;
+    }
+
+    private void sortIfNeeded() {
+        if (!sorted) {
+            synchronized (this) {
+                if (!sorted) {
+                    Arrays.sort(samples);
+                    mode = SlidingWindowStatisticsImpl.findModeOfSorted(samples);
+                    sorted = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns an immutable copy of these statistics, which remains valid once this event is recycled.
+     * @return an immutable copy of these statistics
+     */
+    SlidingWindowStatistics.Statistics copy() {
+        // not while a subscriber sorts the samples
+        synchronized (this) {
+            return SlidingWindowStatisticsImpl.calculateStats(samples.clone());
+        }
+    }
+
+    @Override
+    public double getMean() {
+        return mean;
+    }
+
+    @Override
+    public int getMode() {
+        sortIfNeeded();
+        return mode;
+    }
+
+    @Override
+    public int getPctile(int pctile) {
+        sortIfNeeded();
+        var rank = (int) Math.floor((pctile / 100.0) * (samples.length + 1));
+        return samples[rank - 1];
+    }
+
+    @Override
+    public int getMin() {
+        return min;
+    }
+
+    @Override
+    public int getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,48 @@
+package michelerossi.statistics;
+
+/**
+ * Plain Java implementation of {@link AggregationKernels}, used when the Vector API is not available.
+ */
+final class ScalarAggregationKernels implements AggregationKernels {
+
+    @Override
+    public long sum(int[] samples) {
+        var sum = 0L;
+        for (int sample : samples) {
+            sum += sample;
+        }
+        return sum;
+    }
+
+    @Override
+    public int min(int[] samples) {
+        var min = Integer.MAX_VALUE;
+        for (int sample : samples) {
+            min = Math.min(min, sample);
+        }
+        return min;
+    }
+
+    @Override
+    public int max(int[] samples) {
+        var max = Integer.MIN_VALUE;
+        for (int sample : samples) {
+            max = Math.max(max, sample);
+        }
+        return max;
+    }
+
+    @Override
+    public int[] countBelow(int[] samples, int[] bounds) {
+        var counts = new int[bounds.length];
+        for (int b = 0; b < bounds.length; b++) {
+            var bound = bounds[b];
+            var count = 0;
+            for (int sample : samples) {
+                count += sample < bound ? 1 : 0;
+            }
+            counts[b] = count;
+        }
+        return counts;
+    }
+}
@@ -4,7 +4,8 @@ import java.util.function.Consumer;
 
 /**
  * Concrete implementations produce descriptive statistics on a 'sliding window' array of samples. <br>
- * The current version only supports <code>int</code> samples. <br>
+ * This interface only supports <code>int</code> samples, see {@link LongSlidingWindowStatistics} and
+ * {@link DoubleSlidingWindowStatistics} for the <code>long</code> and <code>double</code> specializations. <br>
  */
 public interface SlidingWindowStatistics {
 
@@ -1,20 +1,51 @@
 package michelerossi.statistics;
 
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
+import lombok.Getter;
+import lombok.NonNull;
+
 import michelerossi.eventbus.EventBus;
+import michelerossi.eventbus.EventPool;
 
 /**
  * An implementation of {@link SlidingWindowStatistics} which based on a {@link IntShiftBuffer}
- * which uses an {@link EventBus} to deliver statistics asynchronously.
+ * which uses an {@link EventBus} to deliver statistics asynchronously. <br>
+ * Another {@link IntWindowBuffer} can be provided instead, e.g. an {@link OffHeapIntShiftBuffer} resumed from a file. <br>
+ * By default statistics are recalculated and published for every sample once the window is full. <br>
+ * In lazy mode statistics are only calculated when {@link #getLatestStatistics()} is called or when a publication is due,
+ * and are memoized until the window changes. Publication is limited to a maximum rate and/or triggered only when
+ * the mean of the window moved by more than a threshold since the last publication. A change held back by the rate
+ * limit is published once the interval expires, even if no sample is added meanwhile. <br>
+ * In pooled mode the published statistics are recycled {@link michelerossi.eventbus.PooledEvent} instances, so that adding
+ * samples to a full window does not allocate. <br>
+ * The mean, minimum and maximum are aggregated with {@link WindowAggregations} when the statistics are calculated, while
+ * the samples are only sorted the first time the mode or a percentile of the statistics is requested. <br>
+ * Slow calculations are recorded as {@link StatisticsCalculationEvent} flight recorder events.
  */
 public class SlidingWindowStatisticsImpl implements SlidingWindowStatistics {
-    private final IntShiftBuffer shiftBuffer;
+    private static final long NEVER_PUBLISHED = Long.MIN_VALUE;
+
+    private final IntWindowBuffer shiftBuffer;
     private final AtomicReference<Statistics> latestStats = new AtomicReference<>();
     private final EventBus eventBus;
+    private final boolean lazy;
+    private final long minPublishIntervalNanos;
+    private final double meanChangeThreshold;
+    private final AtomicLong windowVersion = new AtomicLong();
+    private final AtomicLong windowSum = new AtomicLong();
+    private final AtomicLong lastPublishNanos = new AtomicLong(NEVER_PUBLISHED);
+    private final AtomicReference<MemoizedStatistics> memoizedStats = new AtomicReference<>();
+    private final EventPool<PooledStatistics> statisticsPool;
+    private final AtomicBoolean trailingPublicationScheduled = new AtomicBoolean();
+    private volatile double lastPublishedMean;
+    private volatile long publishedVersion;
 
     /**
      * Constructor
@@ -24,81 +55,177 @@ public class SlidingWindowStatisticsImpl implements SlidingWindowStatistics {
     public SlidingWindowStatisticsImpl(EventBus eventBus, int numSamples) {
         this.shiftBuffer = new IntShiftBuffer(numSamples);
         this.eventBus = eventBus;
+        this.lazy = false;
+        this.minPublishIntervalNanos = 0;
+        this.meanChangeThreshold = 0;
+        this.statisticsPool = null;
     }
 
-    private static Statistics calculateStats(int[] samples) {
-        Arrays.sort(samples);
-        var modeAndMean = findMinMaxModeMean(samples);
-        return new Statistics() {
-            @Override
-            public double getMean() {
-                return modeAndMean.mean();
-            }
-
-            @Override
-            public int getMode() {
-                return modeAndMean.mode();
-            }
+    /**
+     * Constructor using the specified buffer, e.g. an {@link OffHeapIntShiftBuffer} reloaded from a snapshot. <br>
+     * If the buffer is already full its statistics are calculated straight away, so that {@link #getLatestStatistics()}
+     * returns them before any new sample is added. They are not published as there are no subscribers yet.
+     * @param eventBus    the eventBus to use to dispatch statistics objects asynchronously
+     * @param shiftBuffer the buffer holding the samples
+     */
+    public SlidingWindowStatisticsImpl(EventBus eventBus, IntWindowBuffer shiftBuffer) {
+        this.shiftBuffer = shiftBuffer;
+        this.eventBus = eventBus;
+        this.lazy = false;
+        this.minPublishIntervalNanos = 0;
+        this.meanChangeThreshold = 0;
+        this.statisticsPool = null;
+        if (shiftBuffer.getCurrentSize() == shiftBuffer.getBufferSize()) {
+            latestStats.set(calculateWindowStats());
+        }
+    }
 
-            @Override
-            public int getPctile(int pctile) {
-                var rank = (int) Math.floor((pctile / 100.0) * (samples.length + 1));
-                return samples[rank - 1];
-            }
+    /**
+     * Constructor for the lazy mode. <br>
+     * Statistics are published at most once every <code>minPublishInterval</code> and, when <code>meanChangeThreshold</code>
+     * is positive, only if the mean of the window changed by at least that amount since the last publication.
+     * The first full window is always published. <br>
+     * A change held back because the previous publication is too recent is published when <code>minPublishInterval</code>
+     * expires, using the common {@link CompletableFuture#delayedExecutor(long, TimeUnit)}, so that subscribers do not keep
+     * stale statistics when samples stop. Changes of the mean smaller than <code>meanChangeThreshold</code> are never published.
+     * @param eventBus            the eventBus to use to dispatch statistics objects asynchronously
+     * @param numSamples          the number of samples to use to calculate descriptive statitics
+     * @param minPublishInterval  the minimum time between two publications, 0 for no rate limit
+     * @param timeUnit            the time unit of minPublishInterval
+     * @param meanChangeThreshold the minimum absolute change of the mean triggering a publication, 0 to disable
+     */
+    public SlidingWindowStatisticsImpl(
+        EventBus eventBus,
+        int numSamples,
+        long minPublishInterval,
+        TimeUnit timeUnit,
+        double meanChangeThreshold) {
+        this.shiftBuffer = new IntShiftBuffer(numSamples);
+        this.eventBus = eventBus;
+        this.lazy = true;
+        this.minPublishIntervalNanos = timeUnit.toNanos(minPublishInterval);
+        this.meanChangeThreshold = meanChangeThreshold;
+        this.statisticsPool = null;
+    }
 
-            @Override
-            public int getMin() {
-                return modeAndMean.min();
-            }
+    /**
+     * Constructor for the pooled mode. <br>
+     * Statistics are recalculated and published for every sample once the window is full, like in the default mode, into
+     * statistics objects taken from a pool of <code>poolSize</code> preallocated ones. The {@link EventBus} returns them to
+     * the pool once every subscriber consumed them: subscribers must not keep the statistics they receive.
+     * {@link #getLatestStatistics()} returns a copy which remains valid. <br>
+     * The pool should hold more statistics than can be queued for delivery at the same time, plus the latest statistics.
+     * @param eventBus   the eventBus to use to dispatch statistics objects asynchronously
+     * @param numSamples the number of samples to use to calculate descriptive statitics
+     * @param poolSize   the number of statistics objects to preallocate
+     */
+    public SlidingWindowStatisticsImpl(EventBus eventBus, int numSamples, int poolSize) {
+        this.shiftBuffer = new IntShiftBuffer(numSamples);
+        this.eventBus = eventBus;
+        this.lazy = false;
+        this.minPublishIntervalNanos = 0;
+        this.meanChangeThreshold = 0;
+        this.statisticsPool = new EventPool<>(poolSize, () -> new PooledStatistics(numSamples));
+    }
 
-            @Override
-            public int getMax() {
-                return modeAndMean.max();
-            }
-        };
-    }
-
-    private static ModeMeanMinMax findMinMaxModeMean(int[] array) {
-        var frequencyMap = new HashMap<Integer, Integer>();
-        var total = 0.0;
-        var min = Integer.MAX_VALUE;
-        var max = Integer.MIN_VALUE;
-        for (int num : array) {
-            total += num;
-            if (num <= min) {
-                min = num;
-            }
-            if (num >= max) {
-                max = num;
-            }
-            frequencyMap.put(num, frequencyMap.getOrDefault(num, 0) + 1);
-        }
+    /**
+     * Returns the statistics of the samples, which are sorted in place if the mode or a percentile is requested.
+     * @param samples the samples, not to be modified afterwards
+     * @return the statistics of the samples
+     */
+    static Statistics calculateStats(int[] samples) {
+        return new WindowStatistics(samples);
+    }
 
+    /** Returns the most frequent value of the sorted array, the lowest one if several are equally frequent */
+    static int findModeOfSorted(int[] sortedArray) {
+        // equal values are adjacent in the sorted array
         int mode = 0;
         int maxFrequency = 0;
-
-        for (var entry : frequencyMap.entrySet()) {
-            int frequency = frequencyMap.get(entry.getKey());
-            if (frequency > maxFrequency) {
-                maxFrequency = frequency;
-                mode = entry.getKey();
+        var runStart = 0;
+        for (int i = 1; i <= sortedArray.length; i++) {
+            if (i == sortedArray.length || sortedArray[i] != sortedArray[runStart]) {
+                if (i - runStart > maxFrequency) {
+                    maxFrequency = i - runStart;
+                    mode = sortedArray[runStart];
+                }
+                runStart = i;
             }
         }
-
-        return new ModeMeanMinMax(mode, total / array.length, min, max);
+        return mode;
     }
 
     /** {@inheritDoc} */
     @Override
     public void add(int measurement) {
+        if (lazy) {
+            addLazy(measurement);
+            return;
+        }
         this.shiftBuffer.add(measurement);
         if (this.shiftBuffer.getBufferSize() == this.shiftBuffer.getCurrentSize()) {
-            var stats = calculateStats(this.shiftBuffer.getSamples());
-            latestStats.set(stats);
+            var stats = calculateWindowStats();
+            if (stats instanceof PooledStatistics pooledStats) {
+                // the latest statistics hold their own reference, the one of the publisher goes to the bus
+                pooledStats.retain();
+                var previousStats = latestStats.getAndSet(stats);
+                if (previousStats != null) {
+                    ((PooledStatistics) previousStats).release();
+                }
+            } else {
+                latestStats.set(stats);
+            }
+            eventBus.publishEvent(stats);
+        }
+    }
+
+    private void addLazy(int measurement) {
+        var evicted = this.shiftBuffer.add(measurement);
+        windowSum.addAndGet((long) measurement - evicted);
+        windowVersion.incrementAndGet();
+        if (this.shiftBuffer.getBufferSize() == this.shiftBuffer.getCurrentSize()) {
+            publishIfDue();
+        }
+    }
+
+    private void publishIfDue() {
+        var version = windowVersion.get();
+        if (isPublicationDue()) {
+            var stats = getLatestStatistics();
+            publishedVersion = version;
+            lastPublishedMean = stats.getMean();
             eventBus.publishEvent(stats);
         }
     }
 
+    private void scheduleTrailingPublication(long delayNanos) {
+        if (trailingPublicationScheduled.compareAndSet(false, true)) {
+            CompletableFuture.delayedExecutor(Math.max(1, delayNanos), TimeUnit.NANOSECONDS).execute(() -> {
+                trailingPublicationScheduled.set(false);
+                if (windowVersion.get() != publishedVersion) {
+                    publishIfDue();
+                }
+            });
+        }
+    }
+
+    private boolean isPublicationDue() {
+        var lastPublish = lastPublishNanos.get();
+        var now = System.nanoTime();
+        if (lastPublish != NEVER_PUBLISHED) {
+            if (now - lastPublish < minPublishIntervalNanos) {
+                scheduleTrailingPublication(minPublishIntervalNanos - (now - lastPublish));
+                return false;
+            }
+            var mean = (double) windowSum.get() / this.shiftBuffer.getBufferSize();
+            if (meanChangeThreshold > 0 && Math.abs(mean - lastPublishedMean) < meanChangeThreshold) {
+                return false;
+            }
+        }
+        // only one of the threads adding samples concurrently gets to publish
+        return lastPublishNanos.compareAndSet(lastPublish, now);
+    }
+
     /** {@inheritDoc} */
     @Override
     public void fillBuffer(int measurement) {
@@ -113,12 +240,130 @@ public class SlidingWindowStatisticsImpl implements SlidingWindowStatistics {
         eventBus.addSubscriber(Statistics.class, statisticsConsumer);
     }
 
+    /**
+     * Counts the samples of the current window falling in each of the buckets delimited by the specified bounds, e.g. to
+     * export the distribution of the window as a histogram, see {@link WindowAggregations#bucketCounts(int[], int[])}.
+     * @param bounds the bounds of the buckets, in strictly ascending order
+     * @return the number of samples in each bucket, <code>bounds.length + 1</code> counts, or null if the window is not full yet
+     */
+    public int[] getBucketCounts(@NonNull int[] bounds) {
+        if (this.shiftBuffer.getCurrentSize() < this.shiftBuffer.getBufferSize()) {
+            return null;
+        }
+        return WindowAggregations.bucketCounts(this.shiftBuffer.getSamples(), bounds);
+    }
+
     /** {@inheritDoc} */
     @Override
     public Statistics getLatestStatistics() {
-        return latestStats.get();
+        if (statisticsPool != null) {
+            return copyLatestPooledStatistics();
+        }
+        if (!lazy) {
+            return latestStats.get();
+        }
+        if (this.shiftBuffer.getCurrentSize() < this.shiftBuffer.getBufferSize()) {
+            return null;
+        }
+        var version = windowVersion.get();
+        var memoized = memoizedStats.get();
+        if (memoized != null && memoized.version() == version) {
+            return memoized.statistics();
+        }
+        var stats = calculateWindowStats();
+        memoizedStats.compareAndSet(memoized, new MemoizedStatistics(version, stats));
+        return stats;
     }
 
-    private record ModeMeanMinMax(int mode, double mean, int min, int max) {
+    private Statistics copyLatestPooledStatistics() {
+        while (true) {
+            var stats = (PooledStatistics) latestStats.get();
+            if (stats == null) {
+                return null;
+            }
+            // once retained the statistics can not be recycled, and they are still the latest ones unless replaced meanwhile
+            if (stats.tryRetain()) {
+                try {
+                    if (latestStats.get() == stats) {
+                        return stats.copy();
+                    }
+                } finally {
+                    stats.release();
+                }
+            }
+        }
+    }
+
+    /** Calculates the statistics of the current window, recording slow calculations as flight recorder events */
+    private Statistics calculateWindowStats() {
+        var calculationEvent = new StatisticsCalculationEvent();
+        calculationEvent.begin();
+        Statistics stats;
+        if (statisticsPool != null) {
+            var pooledStats = statisticsPool.claim();
+            this.shiftBuffer.copySamplesTo(pooledStats.samples);
+            pooledStats.calculate();
+            stats = pooledStats;
+        } else {
+            stats = calculateStats(this.shiftBuffer.getSamples());
+        }
+        calculationEvent.end();
+        if (calculationEvent.shouldCommit()) {
+            calculationEvent.numSamples = this.shiftBuffer.getBufferSize();
+            calculationEvent.lazy = lazy;
+            calculationEvent.commit();
+        }
+        return stats;
+    }
+
+    private record MemoizedStatistics(long version, Statistics statistics) {
+    }
+
+    /**
+     * Statistics of a window: the mean, minimum and maximum are aggregated straight away, the samples are sorted in place
+     * the first time the mode or a percentile is requested, as most subscribers only use the mean.
+     */
+    private static final class WindowStatistics implements Statistics {
+        private final int[] samples;
+        @Getter
+        private final double mean;
+        @Getter
+        private final int min;
+        @Getter
+        private final int max;
+        private volatile boolean sorted;
+        private int mode;
+
+        private WindowStatistics(int[] samples) {
+            this.samples = samples;
+            this.mean = (double) WindowAggregations.sum(samples) / samples.length;
+            this.min = WindowAggregations.min(samples);
+            this.max = WindowAggregations.max(samples);
+        }
+
+        private void sortIfNeeded() {
+            if (!sorted) {
+                synchronized (this) {
+                    if (!sorted) {
+                        Arrays.sort(samples);
+                        mode = findModeOfSorted(samples);
+                        sorted = true;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int getMode() {
+            sortIfNeeded();
+            return mode;
+        }
+
+        @Override
+        public int getPctile(int pctile) {
+            sortIfNeeded();
+            var rank = (int) Math.floor((pctile / 100.0) * (samples.length + 1));
+            return samples[rank - 1];
+        }
     }
 }
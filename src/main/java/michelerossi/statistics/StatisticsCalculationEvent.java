@@ -0,0 +1,26 @@
+package michelerossi.statistics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event timing the calculation of the statistics of a sliding window, i.e. the copy and sort of the window.
+ */
+@Name("michelerossi.statistics.StatisticsCalculation")
+@Label("Statistics Calculation")
+@Description("Calculation of the statistics of a sliding window")
+@Category({"Event Bus", "Statistics"})
+@Threshold("1 ms")
+@StackTrace(false)
+class StatisticsCalculationEvent extends Event {
+    @Label("Samples")
+    int numSamples;
+
+    @Label("Lazy")
+    boolean lazy;
+}
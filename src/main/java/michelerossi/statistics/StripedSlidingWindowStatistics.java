@@ -0,0 +1,261 @@
+package michelerossi.statistics;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import michelerossi.eventbus.EventBus;
+
+/**
+ * An implementation of {@link SlidingWindowStatistics} meant for many threads recording measurements concurrently. <br>
+ * Similarly to {@link java.util.concurrent.atomic.LongAdder}, samples are recorded into a set of cells: each thread
+ * writes to the cell its id hashes to and moves on to the next cell if that one is busy, so writers practically never
+ * wait for each other. Each cell keeps the latest <code>numSamples</code> samples together with the time they were added. <br>
+ * Statistics are not calculated for every sample: {@link #getLatestStatistics()} merges the cells on demand, keeping the
+ * <code>numSamples</code> most recent samples across all cells, and {@link #publishStatistics()} publishes the merged
+ * statistics to the subscribers. Adding samples publishes them at most once every <code>minPublishInterval</code>
+ * (100 ms by default): samples added within the interval are published when it expires, on the common
+ * {@link CompletableFuture#delayedExecutor(long, TimeUnit)}, so subscribers such as a
+ * {@link michelerossi.throttling.TimeBasedThrottler} receive the statistics as from the other implementations. <br>
+ * The ordering of samples recorded by different threads at nearly the same time is approximate, which only matters for
+ * the samples at the edge of the window. <br>
+ * Memory usage is <code>numCells * numSamples * 12</code> bytes.
+ */
+public class StripedSlidingWindowStatistics implements SlidingWindowStatistics {
+    private static final long DEFAULT_PUBLISH_INTERVAL_MILLIS = 100;
+    private static final long NEVER_PUBLISHED = Long.MIN_VALUE;
+
+    private final Cell[] cells;
+    private final int cellMask;
+    private final int numSamples;
+    private final EventBus eventBus;
+    private final long minPublishIntervalNanos;
+    private final AtomicLong lastPublishNanos = new AtomicLong(NEVER_PUBLISHED);
+    private final AtomicBoolean trailingPublicationScheduled = new AtomicBoolean();
+
+    /**
+     * Constructor using a number of cells equal to the number of available processors
+     * @param eventBus   the eventBus to use to dispatch statistics objects
+     * @param numSamples the number of samples to use to calculate descriptive statistics
+     */
+    public StripedSlidingWindowStatistics(EventBus eventBus, int numSamples) {
+        this(eventBus, numSamples, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor
+     * @param eventBus   the eventBus to use to dispatch statistics objects
+     * @param numSamples the number of samples to use to calculate descriptive statistics
+     * @param numCells   the number of cells, rounded up to the next power of two
+     */
+    public StripedSlidingWindowStatistics(EventBus eventBus, int numSamples, int numCells) {
+        this(eventBus, numSamples, numCells, DEFAULT_PUBLISH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructor
+     * @param eventBus           the eventBus to use to dispatch statistics objects
+     * @param numSamples         the number of samples to use to calculate descriptive statistics
+     * @param numCells           the number of cells, rounded up to the next power of two
+     * @param minPublishInterval the minimum time between two publications triggered by adding samples
+     * @param timeUnit           the time unit of minPublishInterval
+     */
+    public StripedSlidingWindowStatistics(EventBus eventBus, int numSamples, int numCells, long minPublishInterval, TimeUnit timeUnit) {
+        if (numSamples <= 0 || numCells <= 0 || minPublishInterval < 0) {
+            throw new IllegalArgumentException("Invalid numSamples " + numSamples + ", numCells " + numCells + " or minPublishInterval " + minPublishInterval);
+        }
+        var cellsCount = 1 << (32 - Integer.numberOfLeadingZeros(numCells - 1));
+        this.cells = new Cell[cellsCount];
+        for (int i = 0; i < cellsCount; i++) {
+            cells[i] = new Cell(numSamples);
+        }
+        this.cellMask = cellsCount - 1;
+        this.numSamples = numSamples;
+        this.eventBus = eventBus;
+        this.minPublishIntervalNanos = timeUnit.toNanos(minPublishInterval);
+    }
+
+    private static int threadHash() {
+        var id = Thread.currentThread().getId();
+        var hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void add(int measurement) {
+        var cell = acquireCell();
+        var now = System.nanoTime();
+        try {
+            cell.add(measurement, now);
+        } finally {
+            cell.release();
+        }
+        publishIfDue(now);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void fillBuffer(int measurement) {
+        var cell = acquireCell();
+        try {
+            var now = System.nanoTime();
+            for (int i = 0; i < numSamples; i++) {
+                cell.add(measurement, now);
+            }
+        } finally {
+            cell.release();
+        }
+        publishIfDue(System.nanoTime());
+    }
+
+    /** Publishes unless the previous publication is too recent, in which case the publication is deferred */
+    private void publishIfDue(long now) {
+        // only reads of shared state unless publishing, writers do not contend here
+        var lastPublish = lastPublishNanos.get();
+        if (lastPublish != NEVER_PUBLISHED && now - lastPublish < minPublishIntervalNanos) {
+            if (!trailingPublicationScheduled.get() && trailingPublicationScheduled.compareAndSet(false, true)) {
+                var delay = minPublishIntervalNanos - (now - lastPublish);
+                CompletableFuture.delayedExecutor(Math.max(1, delay), TimeUnit.NANOSECONDS).execute(() -> {
+                    trailingPublicationScheduled.set(false);
+                    lastPublishNanos.set(System.nanoTime());
+                    publishStatistics();
+                });
+            }
+            return;
+        }
+        if (lastPublishNanos.compareAndSet(lastPublish, now)) {
+            publishStatistics();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void subscribeForStatistics(Consumer<Statistics> statisticsConsumer) {
+        eventBus.addSubscriber(Statistics.class, statisticsConsumer);
+    }
+
+    /**
+     * Merges the cells and publishes the resulting statistics to the subscribers, if enough samples are available.
+     * @return the published statistics or null if not enough samples are available
+     */
+    public Statistics publishStatistics() {
+        var stats = getLatestStatistics();
+        if (stats != null) {
+            eventBus.publishEvent(stats);
+        }
+        return stats;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Statistics getLatestStatistics() {
+        var cellValues = new int[cells.length][numSamples];
+        var cellStamps = new long[cells.length][numSamples];
+        var cellSizes = new int[cells.length];
+        var totalSize = 0;
+        for (int i = 0; i < cells.length; i++) {
+            var cell = cells[i];
+            cell.lock();
+            try {
+                cellSizes[i] = cell.copyInto(cellValues[i], cellStamps[i]);
+            } finally {
+                cell.release();
+            }
+            totalSize += cellSizes[i];
+        }
+        if (totalSize < numSamples) {
+            return null;
+        }
+
+        // each cell is ordered oldest first, repeatedly take the newest remaining sample across cells
+        var windowSamples = new int[numSamples];
+        for (int n = 0; n < numSamples; n++) {
+            var newestCell = -1;
+            for (int i = 0; i < cells.length; i++) {
+                if (cellSizes[i] > 0 && (newestCell < 0 || cellStamps[i][cellSizes[i] - 1] - cellStamps[newestCell][cellSizes[newestCell] - 1] > 0)) {
+                    newestCell = i;
+                }
+            }
+            windowSamples[n] = cellValues[newestCell][--cellSizes[newestCell]];
+        }
+        return SlidingWindowStatisticsImpl.calculateStats(windowSamples);
+    }
+
+    private Cell acquireCell() {
+        var hash = threadHash();
+        while (true) {
+            for (int i = 0; i <= cellMask; i++) {
+                var cell = cells[(hash + i) & cellMask];
+                if (cell.tryLock()) {
+                    return cell;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /** A ring buffer of samples and their timestamps, guarded by a spin flag */
+    private static final class Cell {
+        private static final VarHandle BUSY;
+
+        static {
+            try {
+                BUSY = MethodHandles.lookup().findVarHandle(Cell.class, "busy", int.class);
+            } catch (ReflectiveOperationException ex) {
+                throw new ExceptionInInitializerError(ex);
+            }
+        }
+
+        private final int[] values;
+        private final long[] stamps;
+        private int currentIndex;
+        private int totalNumItems;
+
+        @SuppressWarnings("unused")
+        private volatile int busy;
+
+        private Cell(int numSamples) {
+            this.values = new int[numSamples];
+            this.stamps = new long[numSamples];
+        }
+
+        private boolean tryLock() {
+            return (int) BUSY.getOpaque(this) == 0 && BUSY.compareAndSet(this, 0, 1);
+        }
+
+        private void lock() {
+            while (!tryLock()) {
+                Thread.onSpinWait();
+            }
+        }
+
+        private void release() {
+            BUSY.setRelease(this, 0);
+        }
+
+        private void add(int value, long stamp) {
+            values[currentIndex] = value;
+            stamps[currentIndex] = stamp;
+            currentIndex = currentIndex + 1 == values.length ? 0 : currentIndex + 1;
+            if (totalNumItems < values.length) {
+                totalNumItems++;
+            }
+        }
+
+        /** Copies the samples present in the cell, oldest first, and returns their number */
+        private int copyInto(int[] valuesDestination, long[] stampsDestination) {
+            var start = totalNumItems < values.length ? 0 : currentIndex;
+            for (int i = 0; i < totalNumItems; i++) {
+                var ix = start + i < values.length ? start + i : start + i - values.length;
+                valuesDestination[i] = values[ix];
+                stampsDestination[i] = stamps[ix];
+            }
+            return totalNumItems;
+        }
+    }
+}
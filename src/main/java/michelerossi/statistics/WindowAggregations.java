@@ -0,0 +1,98 @@
+package michelerossi.statistics;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sum, min, max and bucketed counts over windows of <code>int</code> samples, as used to calculate the statistics. <br>
+ * When the Vector API kernels are built, with the <code>vector</code> Maven profile, and the JVM runs with the incubating
+ * Vector API module (<code>--add-modules jdk.incubator.vector</code>), the aggregations are computed with SIMD
+ * instructions, several samples at a time; otherwise plain loops are used. The implementation is chosen once, when this
+ * class is initialized, see {@link #isVectorized()}. <br>
+ * The input arrays are neither modified nor required to be sorted.
+ */
+@Slf4j
+public final class WindowAggregations {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final AggregationKernels KERNELS = loadKernels();
+
+    private WindowAggregations() {
+    }
+
+    private static AggregationKernels loadKernels() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                // loaded reflectively so that this class links without the incubator module and without the vector sources
+                var vectorKernels = (AggregationKernels) Class.forName("michelerossi.statistics.VectorAggregationKernels")
+                    .getDeclaredConstructor()
+                    .newInstance();
+                log.info("Window aggregations use the Vector API");
+                return vectorKernels;
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+                log.warn("Unable to use the Vector API for window aggregations, falling back to scalar loops", ex);
+            }
+        }
+        return new ScalarAggregationKernels();
+    }
+
+    /**
+     * Returns true if the aggregations use the Vector API.
+     * @return true if the aggregations use the Vector API
+     */
+    public static boolean isVectorized() {
+        return !(KERNELS instanceof ScalarAggregationKernels);
+    }
+
+    /**
+     * Returns the sum of the samples, computed without overflow.
+     * @param samples the samples
+     * @return the sum of the samples
+     */
+    public static long sum(@NonNull int[] samples) {
+        return KERNELS.sum(samples);
+    }
+
+    /**
+     * Returns the lowest sample, {@link Integer#MAX_VALUE} if there are no samples.
+     * @param samples the samples
+     * @return the lowest sample
+     */
+    public static int min(@NonNull int[] samples) {
+        return KERNELS.min(samples);
+    }
+
+    /**
+     * Returns the highest sample, {@link Integer#MIN_VALUE} if there are no samples.
+     * @param samples the samples
+     * @return the highest sample
+     */
+    public static int max(@NonNull int[] samples) {
+        return KERNELS.max(samples);
+    }
+
+    /**
+     * Counts the samples falling in each of the buckets delimited by the specified bounds. <br>
+     * Bucket <code>i</code> counts the samples from <code>bounds[i - 1]</code> included to <code>bounds[i]</code> excluded,
+     * the first bucket counting all the samples lower than <code>bounds[0]</code> and the last one, at index
+     * <code>bounds.length</code>, all the samples greater than or equal to the last bound.
+     * @param samples the samples
+     * @param bounds  the bounds of the buckets, in strictly ascending order
+     * @return the number of samples in each bucket, <code>bounds.length + 1</code> counts
+     */
+    public static int[] bucketCounts(@NonNull int[] samples, @NonNull int[] bounds) {
+        for (int b = 1; b < bounds.length; b++) {
+            if (bounds[b] <= bounds[b - 1]) {
+                throw new IllegalArgumentException("Bucket bounds must be in strictly ascending order");
+            }
+        }
+        var below = KERNELS.countBelow(samples, bounds);
+        var counts = new int[bounds.length + 1];
+        var previous = 0;
+        for (int b = 0; b < bounds.length; b++) {
+            counts[b] = below[b] - previous;
+            previous = below[b];
+        }
+        counts[bounds.length] = samples.length - previous;
+        return counts;
+    }
+}
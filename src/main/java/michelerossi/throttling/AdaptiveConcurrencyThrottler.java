@@ -0,0 +1,183 @@
+package michelerossi.throttling;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import michelerossi.eventbus.EventBus;
+import michelerossi.statistics.SlidingWindowStatistics;
+import michelerossi.statistics.SlidingWindowStatistics.Statistics;
+
+/**
+ * Concurrency limiting implementation of {@link Throttler} whose limit adapts to the observed latency. <br>
+ * Each call admitted by {@link #shouldProceed()} holds one of <code>limit</code> slots until {@link #release(long, TimeUnit)}
+ * is called with the latency of the call. Latencies are recorded, in microseconds, into the specified
+ * {@link SlidingWindowStatistics} and every time new statistics are published the limit is updated gradient-style:
+ * <ul>
+ *     <li>the 'no load' latency is the lowest median observed, slowly drifting up if the median stays higher</li>
+ *     <li>the gradient is <code>tolerance * noLoadLatency / p99</code>, capped between 0.5 and 1</li>
+ *     <li>the new limit is <code>limit * gradient + sqrt(limit)</code>, smoothed and bounded by the min and max limits</li>
+ * </ul>
+ * The limit only grows if at least half of the slots have been used since the previous update. <br>
+ * {@link ThrottleResult#DO_NOT_PROCEED} is published when all slots are in use, {@link ThrottleResult#PROCEED} when slots
+ * become available again, whether because of a release or of a higher limit. The callers waiting in {@link #acquire()}
+ * are granted the slots freed by releases and limit increases in FIFO order, and must release them in the same way. <br>
+ * As statistics are delivered through the event bus of the statistics, the latency statistics should not share their
+ * event bus with other statistics. Using the lazy mode of {@link michelerossi.statistics.SlidingWindowStatisticsImpl}
+ * avoids recalculating the statistics on every release.
+ */
+@Slf4j
+public class AdaptiveConcurrencyThrottler implements Throttler {
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double NO_LOAD_LATENCY_DRIFT = 0.001;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicReference<ThrottleResult> lastResult = new AtomicReference<>(ThrottleResult.PROCEED);
+    private final SlidingWindowStatistics latencyStatistics;
+    private final EventBus eventBus;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final PermitWaiterQueue waiters;
+    private volatile double limit;
+    private double noLoadLatency = Double.NaN;
+
+    /**
+     * Constructor
+     * @param eventBus          the event bus used to notify status changes
+     * @param latencyStatistics the statistics receiving the latencies of the calls, in microseconds
+     * @param initialLimit      the initial number of concurrent calls
+     * @param minLimit          the minimum number of concurrent calls
+     * @param maxLimit          the maximum number of concurrent calls
+     * @param tolerance         how many times the no load latency the p99 latency can be before reducing the limit, e.g. 2.0
+     */
+    public AdaptiveConcurrencyThrottler(
+        EventBus eventBus,
+        SlidingWindowStatistics latencyStatistics,
+        int initialLimit,
+        int minLimit,
+        int maxLimit,
+        double tolerance) {
+        if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit || tolerance < 1.0) {
+            throw new IllegalArgumentException("Invalid limits " + minLimit + " <= " + initialLimit + " <= " + maxLimit + " or tolerance " + tolerance);
+        }
+        this.eventBus = eventBus;
+        this.latencyStatistics = latencyStatistics;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.limit = initialLimit;
+        this.waiters = new PermitWaiterQueue(() -> shouldProceed() == ThrottleResult.PROCEED, this::returnSlot, null);
+        this.latencyStatistics.subscribeForStatistics(this::updateLimit);
+    }
+
+    /**
+     * Decides whether the current call is admitted. When {@link ThrottleResult#PROCEED} is returned the call holds a
+     * slot which must be returned with {@link #release(long, TimeUnit)}.
+     * @return {@link ThrottleResult#PROCEED} if the call is admitted
+     */
+    @Override
+    public ThrottleResult shouldProceed() {
+        while (true) {
+            var current = inFlight.get();
+            if (current >= getLimit()) {
+                publishStatusUpdate();
+                return ThrottleResult.DO_NOT_PROCEED;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                if (current + 1 > peakInFlight.get()) {
+                    peakInFlight.accumulateAndGet(current + 1, Math::max);
+                }
+                publishStatusUpdate();
+                return ThrottleResult.PROCEED;
+            }
+        }
+    }
+
+    /**
+     * Returns the slot held by a call admitted by {@link #shouldProceed()} and records its latency.
+     * @param latency  the latency of the call
+     * @param timeUnit the time unit of latency
+     */
+    public void release(long latency, TimeUnit timeUnit) {
+        inFlight.decrementAndGet();
+        latencyStatistics.add((int) Math.min(Integer.MAX_VALUE, timeUnit.toMicros(latency)));
+        publishStatusUpdate();
+        waiters.release();
+    }
+
+    private void returnSlot() {
+        inFlight.decrementAndGet();
+        publishStatusUpdate();
+    }
+
+    @Override
+    public CompletableFuture<Void> acquire() {
+        return waiters.acquire();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> tryAcquire(Duration timeout) {
+        return waiters.tryAcquire(timeout);
+    }
+
+    @Override
+    public void notifyWhenCanProceed(Consumer<ThrottleResult> throttleResultConsumer) {
+        eventBus.addSubscriber(ThrottleResult.class, throttleResultConsumer);
+    }
+
+    /**
+     * Returns the current concurrency limit.
+     * @return the current concurrency limit
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns the number of calls currently holding a slot.
+     * @return the number of calls currently holding a slot
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void updateLimit(Statistics latencyStats) {
+        var p50 = latencyStats.getPctile(50);
+        var p99 = latencyStats.getPctile(99);
+        if (Double.isNaN(noLoadLatency) || p50 < noLoadLatency) {
+            noLoadLatency = p50;
+        } else {
+            noLoadLatency += (p50 - noLoadLatency) * NO_LOAD_LATENCY_DRIFT;
+        }
+
+        var gradient = p99 <= 0 ? 1.0 : Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * noLoadLatency / p99));
+        var currentLimit = limit;
+        var newLimit = currentLimit * gradient + Math.sqrt(currentLimit);
+        if (newLimit > currentLimit && peakInFlight.getAndSet(inFlight.get()) < currentLimit / 2) {
+            return;
+        }
+        newLimit = currentLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        if ((int) limit != (int) currentLimit) {
+            log.debug("Concurrency limit changed from {} to {}, p50 {} p99 {} no load latency {}", (int) currentLimit, (int) limit, p50, p99, noLoadLatency);
+            publishStatusUpdate();
+            waiters.release();
+        }
+    }
+
+    private void publishStatusUpdate() {
+        var newResult = inFlight.get() < getLimit() ? ThrottleResult.PROCEED : ThrottleResult.DO_NOT_PROCEED;
+        var oldResult = lastResult.get();
+        if (oldResult != newResult && lastResult.compareAndSet(oldResult, newResult)) {
+            eventBus.publishEvent(newResult);
+        }
+    }
+}
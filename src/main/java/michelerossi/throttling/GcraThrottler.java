@@ -0,0 +1,145 @@
+package michelerossi.throttling;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+import michelerossi.eventbus.EventBus;
+
+/**
+ * Rate-based implementation of {@link Throttler} using the generic cell rate algorithm (GCRA). <br>
+ * The whole state is a single 'theoretical arrival time' (TAT), advanced with a compare-and-set by one emission interval
+ * (<code>interval / maxHitsPerInterval</code>) for every admitted call. A call is admitted as long as the TAT is not
+ * further in the future than the burst tolerance, so up to <code>burstCapacity</code> calls can be admitted back to back. <br>
+ * Unlike {@link TimeBasedThrottler} there is no sampling task and no statistics window: every call to
+ * {@link #shouldProceed()} is an exact admission decision which, when {@link ThrottleResult#PROCEED}, consumes a permit. <br>
+ * As there is no background thread, changes to {@link ThrottleResult#DO_NOT_PROCEED} are detected and published to the
+ * {@link #notifyWhenCanProceed(Consumer)} subscribers when {@link #shouldProceed()} is called; the change back to
+ * {@link ThrottleResult#PROCEED} is also published by a one-shot recheck scheduled, on the common
+ * {@link CompletableFuture#delayedExecutor(long, TimeUnit)}, for when the next permit becomes conforming, so that
+ * subscribers do not need to poll. Callers waiting in {@link #acquire()} are released when their permit becomes
+ * conforming, using the same delay computed from the TAT.
+ */
+@Slf4j
+public class GcraThrottler implements Throttler {
+    private static final long MAX_RECHECK_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong theoreticalArrivalTime;
+    private final AtomicReference<ThrottleResult> lastResult = new AtomicReference<>(ThrottleResult.PROCEED);
+    private final EventBus eventBus;
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final LongSupplier nanoClock;
+    private final PermitWaiterQueue waiters;
+    private final AtomicBoolean recheckScheduled = new AtomicBoolean();
+
+    /**
+     * Constructor
+     * @param eventBus           the event bus used to notify status changes
+     * @param maxHitsPerInterval the number of calls admitted per interval on average
+     * @param interval           the interval
+     * @param intervalTimeUnit   the time unit of interval
+     * @param burstCapacity      the number of calls that can be admitted back to back, at least 1
+     */
+    public GcraThrottler(EventBus eventBus, int maxHitsPerInterval, long interval, TimeUnit intervalTimeUnit, int burstCapacity) {
+        this(eventBus, maxHitsPerInterval, interval, intervalTimeUnit, burstCapacity, System::nanoTime);
+    }
+
+    GcraThrottler(
+        EventBus eventBus,
+        int maxHitsPerInterval,
+        long interval,
+        TimeUnit intervalTimeUnit,
+        int burstCapacity,
+        LongSupplier nanoClock) {
+        if (maxHitsPerInterval <= 0 || interval <= 0 || burstCapacity <= 0) {
+            throw new IllegalArgumentException("maxHitsPerInterval, interval and burstCapacity must be positive");
+        }
+        this.eventBus = eventBus;
+        this.emissionIntervalNanos = Math.max(1, intervalTimeUnit.toNanos(interval) / maxHitsPerInterval);
+        this.burstToleranceNanos = emissionIntervalNanos * (burstCapacity - 1);
+        this.nanoClock = nanoClock;
+        this.theoreticalArrivalTime = new AtomicLong(nanoClock.getAsLong());
+        this.waiters = new PermitWaiterQueue(
+            () -> shouldProceed() == ThrottleResult.PROCEED,
+            () -> theoreticalArrivalTime.addAndGet(-emissionIntervalNanos),
+            this::nanosUntilConforming);
+    }
+
+    /**
+     * Decides whether the current call is admitted, consuming a permit if it is.
+     * @return {@link ThrottleResult#PROCEED} if the call is admitted
+     */
+    @Override
+    public ThrottleResult shouldProceed() {
+        var now = nanoClock.getAsLong();
+        ThrottleResult result;
+        while (true) {
+            var tat = theoreticalArrivalTime.get();
+            var start = tat - now > 0 ? tat : now;
+            if (start - now > burstToleranceNanos) {
+                result = ThrottleResult.DO_NOT_PROCEED;
+                break;
+            }
+            if (theoreticalArrivalTime.compareAndSet(tat, start + emissionIntervalNanos)) {
+                result = ThrottleResult.PROCEED;
+                break;
+            }
+        }
+        publishStatusUpdate(result);
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Void> acquire() {
+        return waiters.acquire();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> tryAcquire(Duration timeout) {
+        return waiters.tryAcquire(timeout);
+    }
+
+    @Override
+    public void notifyWhenCanProceed(Consumer<ThrottleResult> throttleResultConsumer) {
+        eventBus.addSubscriber(ThrottleResult.class, throttleResultConsumer);
+    }
+
+    private void publishStatusUpdate(ThrottleResult newResult) {
+        var oldResult = lastResult.get();
+        if (oldResult != newResult && lastResult.compareAndSet(oldResult, newResult)) {
+            log.debug("Throttle status changed from {} to {}", oldResult, newResult);
+            eventBus.publishEvent(newResult);
+            if (newResult == ThrottleResult.DO_NOT_PROCEED && recheckScheduled.compareAndSet(false, true)) {
+                scheduleRecheck(0);
+            }
+        }
+    }
+
+    /** Returns the time until the next call would be admitted, 0 or negative if it would be admitted now */
+    private long nanosUntilConforming() {
+        return theoreticalArrivalTime.get() - burstToleranceNanos - nanoClock.getAsLong();
+    }
+
+    private void scheduleRecheck(long previousDelayNanos) {
+        // the delay only grows if the clock did not advance as expected, e.g. a clock provided by a test
+        var delay = Math.max(1, Math.max(nanosUntilConforming(), Math.min(2 * previousDelayNanos, MAX_RECHECK_DELAY_NANOS)));
+        CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+            if (lastResult.get() == ThrottleResult.DO_NOT_PROCEED && nanosUntilConforming() > 0) {
+                scheduleRecheck(delay);
+                return;
+            }
+            recheckScheduled.set(false);
+            if (nanosUntilConforming() <= 0) {
+                publishStatusUpdate(ThrottleResult.PROCEED);
+            }
+        });
+    }
+}
@@ -0,0 +1,243 @@
+package michelerossi.throttling;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import lombok.NonNull;
+
+import michelerossi.throttling.Throttler.ThrottleResult;
+
+/**
+ * Rate limits calls independently for each key, e.g. per API key or per IP address, scaling to millions of keys. <br>
+ * Each key is throttled with the same algorithm as {@link GcraThrottler}, so the whole state of a key is a single
+ * <code>long</code> theoretical arrival time (TAT). Keys and TATs are kept in open-addressing tables made of a key array and a
+ * <code>long</code> array, split in stripes each guarded by its own monitor: a key costs about 12 bytes per table slot,
+ * i.e. 16 to 32 bytes depending on the load factor, plus the key object itself. <br>
+ * A key whose TAT is in the past behaves exactly like a key never seen before, therefore:
+ * <ul>
+ *     <li>{@link #evictIdle()} drops such keys without changing any admission decision and is meant to be invoked periodically</li>
+ *     <li>when the maximum number of keys is reached, a new key replaces the most idle of a few keys sampled around its slot</li>
+ * </ul>
+ * This implementation is thread-safe.
+ * @param <K> the type of the keys
+ */
+public class KeyedThrottler<K> {
+    private static final int EVICTION_SAMPLE_SIZE = 16;
+    private static final int INITIAL_STRIPE_CAPACITY = 16;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final LongSupplier nanoClock;
+
+    /**
+     * Constructor
+     * @param maxHitsPerInterval the number of calls admitted per interval on average, for each key
+     * @param interval           the interval
+     * @param intervalTimeUnit   the time unit of interval
+     * @param burstCapacity      the number of calls of a key that can be admitted back to back, at least 1
+     * @param maxKeys            the maximum number of keys tracked at any time
+     */
+    public KeyedThrottler(int maxHitsPerInterval, long interval, TimeUnit intervalTimeUnit, int burstCapacity, int maxKeys) {
+        this(maxHitsPerInterval, interval, intervalTimeUnit, burstCapacity, maxKeys, System::nanoTime);
+    }
+
+    KeyedThrottler(
+        int maxHitsPerInterval,
+        long interval,
+        TimeUnit intervalTimeUnit,
+        int burstCapacity,
+        int maxKeys,
+        LongSupplier nanoClock) {
+        if (maxHitsPerInterval <= 0 || interval <= 0 || burstCapacity <= 0 || maxKeys <= 0) {
+            throw new IllegalArgumentException("maxHitsPerInterval, interval, burstCapacity and maxKeys must be positive");
+        }
+        var numStripes = Math.min(
+            1 << (32 - Integer.numberOfLeadingZeros(4 * Runtime.getRuntime().availableProcessors() - 1)),
+            1 << (32 - Integer.numberOfLeadingZeros(maxKeys - 1)));
+        this.stripes = new Stripe[numStripes];
+        var maxKeysPerStripe = (maxKeys + numStripes - 1) / numStripes;
+        for (int i = 0; i < numStripes; i++) {
+            stripes[i] = new Stripe(maxKeysPerStripe);
+        }
+        this.stripeMask = numStripes - 1;
+        this.emissionIntervalNanos = Math.max(1, intervalTimeUnit.toNanos(interval) / maxHitsPerInterval);
+        this.burstToleranceNanos = emissionIntervalNanos * (burstCapacity - 1);
+        this.nanoClock = nanoClock;
+    }
+
+    private static int spread(Object key) {
+        var hash = key.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /** The low bits of the hash select the stripe, the slot within the stripe is taken from the other bits */
+    private static int slotOf(int hash, int mask) {
+        return (hash >>> 16 | hash << 16) & mask;
+    }
+
+    /**
+     * Decides whether the current call for the specified key is admitted, consuming a permit of the key if it is.
+     * @param key the key
+     * @return {@link ThrottleResult#PROCEED} if the call is admitted
+     */
+    public ThrottleResult shouldProceed(@NonNull K key) {
+        var hash = spread(key);
+        var stripe = stripes[hash & stripeMask];
+        var now = nanoClock.getAsLong();
+        synchronized (stripe) {
+            return stripe.shouldProceed(key, hash, now, emissionIntervalNanos, burstToleranceNanos);
+        }
+    }
+
+    /**
+     * Removes the keys which have fully recovered their burst capacity, their state being identical to a new key.
+     * @return the number of keys removed
+     */
+    public int evictIdle() {
+        var numEvicted = 0;
+        for (var stripe : stripes) {
+            var now = nanoClock.getAsLong();
+            synchronized (stripe) {
+                numEvicted += stripe.evictIdle(now);
+            }
+        }
+        return numEvicted;
+    }
+
+    /**
+     * Returns the number of keys currently tracked.
+     * @return the number of keys currently tracked
+     */
+    public int size() {
+        var size = 0;
+        for (var stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /** A linear probing table of keys and TATs, only accessed while holding its monitor */
+    private static final class Stripe {
+        private final int maxSize;
+        private Object[] keys = new Object[INITIAL_STRIPE_CAPACITY];
+        private long[] tats = new long[INITIAL_STRIPE_CAPACITY];
+        private int size;
+
+        private Stripe(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        private ThrottleResult shouldProceed(Object key, int hash, long now, long emissionIntervalNanos, long burstToleranceNanos) {
+            var mask = keys.length - 1;
+            var slot = slotOf(hash, mask);
+            while (keys[slot] != null && !keys[slot].equals(key)) {
+                slot = (slot + 1) & mask;
+            }
+            var found = keys[slot] != null;
+            var tat = found ? tats[slot] : now;
+            var start = tat - now > 0 ? tat : now;
+            if (start - now > burstToleranceNanos) {
+                return ThrottleResult.DO_NOT_PROCEED;
+            }
+            if (found) {
+                tats[slot] = start + emissionIntervalNanos;
+            } else {
+                insert(key, hash, start + emissionIntervalNanos, now);
+            }
+            return ThrottleResult.PROCEED;
+        }
+
+        private void insert(Object key, int hash, long tat, long now) {
+            if (size >= maxSize) {
+                evictSampled(hash, now);
+            } else if ((size + 1) * 4 > keys.length * 3) {
+                resize(keys.length * 2, false, now);
+            }
+            var mask = keys.length - 1;
+            var slot = slotOf(hash, mask);
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            tats[slot] = tat;
+            size++;
+        }
+
+        /** Removes the most idle key among a few occupied slots following the home slot of the new key */
+        private void evictSampled(int hash, long now) {
+            var mask = keys.length - 1;
+            var slot = slotOf(hash, mask);
+            var victim = -1;
+            var sampleSize = Math.min(EVICTION_SAMPLE_SIZE, size);
+            for (int sampled = 0; sampled < sampleSize; slot = (slot + 1) & mask) {
+                if (keys[slot] != null) {
+                    if (victim < 0 || tats[slot] - tats[victim] < 0) {
+                        victim = slot;
+                    }
+                    if (tats[slot] - now <= 0) {
+                        break;
+                    }
+                    sampled++;
+                }
+            }
+            removeAt(victim);
+        }
+
+        /** Backward-shift deletion, keeping the probe sequences of the following keys intact */
+        private void removeAt(int slot) {
+            var mask = keys.length - 1;
+            var hole = slot;
+            var next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                if (keys[next] == null) {
+                    break;
+                }
+                var home = slotOf(spread(keys[next]), mask);
+                var reachableFromHole = hole <= next ? home <= hole || home > next : home <= hole && home > next;
+                if (reachableFromHole) {
+                    keys[hole] = keys[next];
+                    tats[hole] = tats[next];
+                    hole = next;
+                }
+            }
+            keys[hole] = null;
+            size--;
+        }
+
+        private int evictIdle(long now) {
+            var sizeBefore = size;
+            var capacity = keys.length;
+            while (capacity > INITIAL_STRIPE_CAPACITY && capacity / 4 > sizeBefore) {
+                capacity /= 2;
+            }
+            resize(capacity, true, now);
+            return sizeBefore - size;
+        }
+
+        /** Rebuilds the table with the specified capacity, optionally dropping the keys whose TAT is not after now */
+        private void resize(int capacity, boolean dropIdle, long now) {
+            var oldKeys = keys;
+            var oldTats = tats;
+            keys = new Object[capacity];
+            tats = new long[capacity];
+            size = 0;
+            var mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null && (!dropIdle || oldTats[i] - now > 0)) {
+                    var slot = slotOf(spread(oldKeys[i]), mask);
+                    while (keys[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    tats[slot] = oldTats[i];
+                    size++;
+                }
+            }
+        }
+    }
+}
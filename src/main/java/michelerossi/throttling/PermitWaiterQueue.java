@@ -0,0 +1,145 @@
+package michelerossi.throttling;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Used by {@link Throttler} implementations to implement {@link Throttler#acquire()} and {@link Throttler#tryAcquire(Duration)}. <br>
+ * Callers waiting for a permit are kept in a lock-free FIFO queue and are granted permits one by one, taking one permit
+ * from the throttler for each waiter: when throttling is lifted only as many waiters as there are permits are released,
+ * and no thread is blocked while waiting. <br>
+ * The throttler must call {@link #release()} whenever permits may have become available. Throttlers without a background
+ * thread provide instead the delay after which a permit is expected to be available, and the queue schedules a retry
+ * on the common {@link CompletableFuture#delayedExecutor(long, TimeUnit)} while waiters are left. <br>
+ * Throttlers which need to know which permit is given back, e.g. the time bucket it was counted in, identify each
+ * permit with a <code>long</code>. <br>
+ * Not part of the public Throttler API.
+ */
+final class PermitWaiterQueue {
+    /** Returned by the throttler when no permit is available, never identifying a permit */
+    static final long NO_PERMIT = -1;
+
+    private final Queue<Waiter<?>> waiters = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean retryScheduled = new AtomicBoolean();
+    private final LongSupplier tryTakePermit;
+    private final LongConsumer returnPermit;
+    private final LongSupplier retryDelayNanos;
+
+    /**
+     * Constructor
+     * @param tryTakePermit   takes a permit from the throttler if one is available and returns true, false otherwise
+     * @param returnPermit    gives back a permit taken for a waiter which is not waiting anymore
+     * @param retryDelayNanos the time until the next permit is expected, null if the throttler calls {@link #release()}
+     */
+    PermitWaiterQueue(BooleanSupplier tryTakePermit, Runnable returnPermit, LongSupplier retryDelayNanos) {
+        this(() -> tryTakePermit.getAsBoolean() ? 0 : NO_PERMIT, permit -> returnPermit.run(), retryDelayNanos);
+    }
+
+    /**
+     * Constructor for throttlers identifying their permits
+     * @param tryTakePermit   takes a permit from the throttler if one is available and returns its id, {@link #NO_PERMIT} otherwise
+     * @param returnPermit    gives back the permit with the specified id, taken for a waiter which is not waiting anymore
+     * @param retryDelayNanos the time until the next permit is expected, null if the throttler calls {@link #release()}
+     */
+    PermitWaiterQueue(LongSupplier tryTakePermit, LongConsumer returnPermit, LongSupplier retryDelayNanos) {
+        this.tryTakePermit = tryTakePermit;
+        this.returnPermit = returnPermit;
+        this.retryDelayNanos = retryDelayNanos;
+    }
+
+    private boolean tryGrantImmediately() {
+        return waiters.isEmpty() && tryTakePermit.getAsLong() != NO_PERMIT;
+    }
+
+    CompletableFuture<Void> acquire() {
+        if (tryGrantImmediately()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        var future = new CompletableFuture<Void>();
+        enqueue(future, null);
+        return future;
+    }
+
+    CompletableFuture<Boolean> tryAcquire(Duration timeout) {
+        if (tryGrantImmediately()) {
+            return CompletableFuture.completedFuture(Boolean.TRUE);
+        }
+        if (timeout.isZero() || timeout.isNegative()) {
+            return CompletableFuture.completedFuture(Boolean.FALSE);
+        }
+        var future = new CompletableFuture<Boolean>();
+        future.completeOnTimeout(Boolean.FALSE, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        enqueue(future, Boolean.TRUE);
+        return future;
+    }
+
+    private <T> void enqueue(CompletableFuture<T> future, T grantedValue) {
+        var waiter = new Waiter<>(future, grantedValue);
+        waiters.add(waiter);
+        // granted waiters are polled from the queue by release(): only those timing out or cancelled need removing
+        future.whenComplete((result, ex) -> {
+            if (ex != null || result != grantedValue) {
+                waiters.remove(waiter);
+            }
+        });
+        release();
+    }
+
+    /**
+     * Grants permits to the waiters, in FIFO order, as long as the throttler has permits available.
+     */
+    void release() {
+        while (!waiters.isEmpty()) {
+            var permit = tryTakePermit.getAsLong();
+            if (permit == NO_PERMIT) {
+                scheduleRetry();
+                return;
+            }
+            var waiter = waiters.poll();
+            // the waiter might be gone or have timed out or been cancelled meanwhile: give the permit back and look again
+            if (waiter == null || !waiter.grant()) {
+                returnPermit.accept(permit);
+            }
+        }
+    }
+
+    /**
+     * Cancels the futures of all the waiters, used when the throttler is stopped.
+     */
+    void cancelAll() {
+        for (var waiter = waiters.poll(); waiter != null; waiter = waiters.poll()) {
+            waiter.future().cancel(false);
+        }
+    }
+
+    /**
+     * Returns the number of waiters, waiters timing out or cancelled being removed as soon as their future completes.
+     * @return the number of waiters
+     */
+    int size() {
+        return waiters.size();
+    }
+
+    private void scheduleRetry() {
+        if (retryDelayNanos != null && retryScheduled.compareAndSet(false, true)) {
+            var delay = Math.max(1, retryDelayNanos.getAsLong());
+            CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+                retryScheduled.set(false);
+                release();
+            });
+        }
+    }
+
+    private record Waiter<T>(CompletableFuture<T> future, T grantedValue) {
+        boolean grant() {
+            return future.complete(grantedValue);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package michelerossi.throttling;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import michelerossi.MappedBuffers;
+import michelerossi.Stoppable;
+import michelerossi.eventbus.EventBus;
+
+/**
+ * Implementation of {@link Throttler} enforcing a single rate limit across all the processes of a host. <br>
+ * The hits are counted in a sliding window of time buckets stored in a memory-mapped file: every process throttling
+ * with the same file shares the same counters, without any coordinator or network round trip. <br>
+ * Each bucket is a single <code>long</code> holding the bucket number in its high 32 bits and the hits counted in that bucket
+ * in its low 32 bits, updated with compare-and-set operations through a {@link VarHandle} view of the mapped buffer: a stale
+ * bucket is reset by the first process writing to it after its time has passed. <br>
+ * Each call to {@link #shouldProceed()} first counts itself in the current bucket, then sums the buckets of the window and
+ * takes its hit back if the limit is exceeded. Processes racing for the last permits may therefore be rejected together,
+ * but the limit is never exceeded. Buckets are based on {@link System#currentTimeMillis()}, shared by the processes of a host. <br>
+ * As there is no background thread, status changes are only published to the {@link #notifyWhenCanProceed(Consumer)}
+ * subscribers when {@link #shouldProceed()} is called, and callers waiting in {@link #acquire()} try again at the start
+ * of every bucket. A permit taken for a waiter which is not waiting anymore is taken back from the bucket it was counted in. <br>
+ * {@link #stop()} unmaps the file, which can then be deleted, and calls made once stopped throw an
+ * {@link IllegalStateException}. So that the buffer is never unmapped while in use, each thread counts its calls using
+ * the buffer in a counter of its own, which {@link #stop()} waits to drop to zero: admissions only write to memory
+ * private to their thread besides the buckets, and do not contend on a shared lock.
+ */
+@Slf4j
+public class SharedMemoryThrottler implements Throttler, Stoppable {
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final long MAGIC = 0x5448524F54544C45L;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int NUM_BUCKETS_OFFSET = 8;
+    private static final int MAX_HITS_OFFSET = 16;
+    private static final int BUCKET_MILLIS_OFFSET = 24;
+    private static final int BUCKETS_OFFSET = 64;
+
+    private final MappedByteBuffer buffer;
+    private final AtomicReference<ThrottleResult> lastResult = new AtomicReference<>(ThrottleResult.PROCEED);
+    private final EventBus eventBus;
+    private final int maxHitsPerWindow;
+    private final int numBuckets;
+    private final long bucketMillis;
+    private final PermitWaiterQueue waiters;
+    private final Queue<AtomicInteger> callsInProgress = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<AtomicInteger> threadCallsInProgress = ThreadLocal.withInitial(this::newCallsInProgress);
+    private volatile boolean stopped;
+
+    /**
+     * Constructor, creating the file if it does not exist yet. <br>
+     * All the processes sharing the file must use the same limit, window and number of buckets.
+     * @param file             the file holding the shared counters, normally on a memory-backed file system such as /dev/shm
+     * @param eventBus         the event bus used to notify status changes
+     * @param maxHitsPerWindow the maximum number of hits within the window, across all processes
+     * @param window           the duration of the sliding window
+     * @param windowTimeUnit   the time unit of window
+     * @param numBuckets       the number of buckets the window is divided into
+     */
+    public SharedMemoryThrottler(
+        @NonNull Path file,
+        EventBus eventBus,
+        int maxHitsPerWindow,
+        long window,
+        @NonNull TimeUnit windowTimeUnit,
+        int numBuckets) {
+        if (maxHitsPerWindow <= 0 || numBuckets <= 0 || windowTimeUnit.toMillis(window) < numBuckets) {
+            throw new IllegalArgumentException("maxHitsPerWindow and numBuckets must be positive and buckets at least 1 ms long");
+        }
+        this.eventBus = eventBus;
+        this.maxHitsPerWindow = maxHitsPerWindow;
+        this.numBuckets = numBuckets;
+        this.bucketMillis = windowTimeUnit.toMillis(window) / numBuckets;
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, BUCKETS_OFFSET + 8L * numBuckets);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Unable to map throttling file " + file, ex);
+        }
+        initHeader(file);
+        this.waiters = new PermitWaiterQueue(
+            this::tryTakePermit,
+            this::returnHit,
+            () -> TimeUnit.MILLISECONDS.toNanos(bucketMillis - System.currentTimeMillis() % bucketMillis));
+    }
+
+    private void initHeader(Path file) {
+        if ((long) LONGS.getVolatile(buffer, MAGIC_OFFSET) == 0) {
+            // processes may initialize a new file concurrently: the first value written wins and is validated below
+            LONGS.compareAndSet(buffer, NUM_BUCKETS_OFFSET, 0L, (long) numBuckets);
+            LONGS.compareAndSet(buffer, MAX_HITS_OFFSET, 0L, (long) maxHitsPerWindow);
+            LONGS.compareAndSet(buffer, BUCKET_MILLIS_OFFSET, 0L, bucketMillis);
+            LONGS.compareAndSet(buffer, MAGIC_OFFSET, 0L, MAGIC);
+        }
+        if ((long) LONGS.getVolatile(buffer, MAGIC_OFFSET) != MAGIC
+            || (long) LONGS.getVolatile(buffer, NUM_BUCKETS_OFFSET) != numBuckets
+            || (long) LONGS.getVolatile(buffer, MAX_HITS_OFFSET) != maxHitsPerWindow
+            || (long) LONGS.getVolatile(buffer, BUCKET_MILLIS_OFFSET) != bucketMillis) {
+            throw new IllegalArgumentException("Throttling file " + file + " is not compatible with this throttler configuration");
+        }
+    }
+
+    private static long pack(int bucketNumber, int count) {
+        return ((long) bucketNumber << 32) | (count & 0xFFFFFFFFL);
+    }
+
+    private AtomicInteger newCallsInProgress() {
+        var calls = new AtomicInteger();
+        callsInProgress.add(calls);
+        return calls;
+    }
+
+    /** Counts a call of the current thread using the buffer, returns null without counting it if the throttler is stopped */
+    private AtomicInteger enterBuffer() {
+        var calls = threadCallsInProgress.get();
+        calls.set(calls.get() + 1);
+        // either this thread sees stopped, or stop() sees the call in progress and waits for it to exit
+        if (stopped) {
+            calls.set(calls.get() - 1);
+            return null;
+        }
+        return calls;
+    }
+
+    private static void exitBuffer(AtomicInteger calls) {
+        calls.setRelease(calls.get() - 1);
+    }
+
+    /**
+     * Decides whether the current call is admitted, counting it as a hit if it is.
+     * @return {@link ThrottleResult#PROCEED} if the call is admitted
+     * @throws IllegalStateException if the throttler is stopped
+     */
+    @Override
+    public ThrottleResult shouldProceed() {
+        var calls = enterBuffer();
+        if (calls == null) {
+            throw new IllegalStateException(this + " is stopped");
+        }
+        long permit;
+        try {
+            permit = countHit();
+        } finally {
+            exitBuffer(calls);
+        }
+        var result = permit != PermitWaiterQueue.NO_PERMIT ? ThrottleResult.PROCEED : ThrottleResult.DO_NOT_PROCEED;
+        publishStatusUpdate(result);
+        return result;
+    }
+
+    /** Counts a hit, returning the bucket number and index it was counted in, or NO_PERMIT if the limit is exceeded */
+    private long countHit() {
+        var absoluteBucket = System.currentTimeMillis() / bucketMillis;
+        var bucketNumber = (int) absoluteBucket;
+        var bucketIndex = (int) (absoluteBucket % numBuckets);
+        var offset = BUCKETS_OFFSET + 8 * bucketIndex;
+        while (true) {
+            var packed = (long) LONGS.getVolatile(buffer, offset);
+            var updated = (int) (packed >>> 32) == bucketNumber ? packed + 1 : pack(bucketNumber, 1);
+            if (LONGS.compareAndSet(buffer, offset, packed, updated)) {
+                break;
+            }
+        }
+
+        if (sumWindow(bucketNumber) > maxHitsPerWindow) {
+            takeHitBack(offset, bucketNumber);
+            return PermitWaiterQueue.NO_PERMIT;
+        }
+        // the index is below 2^31, the permit is therefore never NO_PERMIT
+        return pack(bucketNumber, bucketIndex);
+    }
+
+    @Override
+    public CompletableFuture<Void> acquire() {
+        return waiters.acquire();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> tryAcquire(Duration timeout) {
+        return waiters.tryAcquire(timeout);
+    }
+
+    @Override
+    public void notifyWhenCanProceed(Consumer<ThrottleResult> throttleResultConsumer) {
+        eventBus.addSubscriber(ThrottleResult.class, throttleResultConsumer);
+    }
+
+    private long sumWindow(int currentBucketNumber) {
+        var total = 0L;
+        for (int i = 0; i < numBuckets; i++) {
+            var packed = (long) LONGS.getVolatile(buffer, BUCKETS_OFFSET + 8 * i);
+            var age = currentBucketNumber - (int) (packed >>> 32);
+            if (age >= 0 && age < numBuckets) {
+                total += (int) packed;
+            }
+        }
+        return total;
+    }
+
+    /** Takes the hit of a permit back from the bucket it was counted in, unless the bucket has moved on since */
+    private void returnHit(long permit) {
+        var calls = enterBuffer();
+        if (calls == null) {
+            return;
+        }
+        try {
+            takeHitBack(BUCKETS_OFFSET + 8 * (int) permit, (int) (permit >>> 32));
+        } finally {
+            exitBuffer(calls);
+        }
+    }
+
+    private long tryTakePermit() {
+        var calls = enterBuffer();
+        if (calls == null) {
+            return PermitWaiterQueue.NO_PERMIT;
+        }
+        long permit;
+        try {
+            permit = countHit();
+        } finally {
+            exitBuffer(calls);
+        }
+        publishStatusUpdate(permit != PermitWaiterQueue.NO_PERMIT ? ThrottleResult.PROCEED : ThrottleResult.DO_NOT_PROCEED);
+        return permit;
+    }
+
+    /**
+     * Unmaps the shared file, once the calls in progress are complete, and cancels the callers waiting for a permit. <br>
+     * The hits counted in the file are kept for the other processes.
+     */
+    @Override
+    public synchronized void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        for (var calls : callsInProgress) {
+            while (calls.get() > 0) {
+                Thread.yield();
+            }
+        }
+        buffer.force();
+        MappedBuffers.unmap(buffer);
+        waiters.cancelAll();
+        log.info("{} stopped", this);
+    }
+
+    private void takeHitBack(int offset, int bucketNumber) {
+        while (true) {
+            var packed = (long) LONGS.getVolatile(buffer, offset);
+            if ((int) (packed >>> 32) != bucketNumber || (int) packed == 0) {
+                return; // the bucket has moved on to a later time meanwhile
+            }
+            if (LONGS.compareAndSet(buffer, offset, packed, packed - 1)) {
+                return;
+            }
+        }
+    }
+
+    private void publishStatusUpdate(ThrottleResult newResult) {
+        var oldResult = lastResult.get();
+        if (oldResult != newResult && lastResult.compareAndSet(oldResult, newResult)) {
+            log.debug("Throttle status changed from {} to {}", oldResult, newResult);
+            eventBus.publishEvent(newResult);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package michelerossi.throttling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event recording a change of the status of a {@link TimeBasedThrottler}.
+ */
+@Name("michelerossi.throttling.ThrottleStatusChange")
+@Label("Throttle Status Change")
+@Description("Change of the status of a throttler")
+@Category({"Event Bus", "Throttling"})
+@StackTrace(false)
+class ThrottleStatusChangeEvent extends Event {
+    @Label("Throttler")
+    String throttler;
+
+    @Label("Old Status")
+    String oldStatus;
+
+    @Label("New Status")
+    String newStatus;
+
+    @Label("Hits")
+    @Description("The number of hits which caused the change")
+    double numHits;
+}
@@ -1,5 +1,8 @@
 package michelerossi.throttling;
 
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
@@ -12,6 +15,56 @@ public interface Throttler {
     /** Consumers are notified when they should proceed or stop */
     void notifyWhenCanProceed(Consumer<ThrottleResult> throttleResultConsumer);
 
+    /**
+     * Asynchronously acquires a permit to proceed. <br>
+     * The default implementation calls {@link #shouldProceed()} until it returns {@link ThrottleResult#PROCEED}, retrying
+     * after a delay doubling from 1 ms up to 100 ms on the common {@link CompletableFuture#delayedExecutor(long, TimeUnit)}.
+     * The implementations of this package override it so that callers waiting for a permit are served in FIFO order and
+     * only as many of them as permits are available are released.
+     * @return a future completed when the permit is granted
+     */
+    default CompletableFuture<Void> acquire() {
+        if (shouldProceed() == ThrottleResult.PROCEED) {
+            return CompletableFuture.completedFuture(null);
+        }
+        var future = new CompletableFuture<Void>();
+        retryShouldProceed(future, null, TimeUnit.MILLISECONDS.toNanos(1));
+        return future;
+    }
+
+    /**
+     * Asynchronously acquires a permit to proceed, waiting at most the specified time. <br>
+     * The default implementation retries {@link #shouldProceed()} like {@link #acquire()}.
+     * @param timeout the maximum time to wait for a permit
+     * @return a future completed with true when the permit is granted, or with false if the timeout expired first
+     * @see #acquire()
+     */
+    default CompletableFuture<Boolean> tryAcquire(Duration timeout) {
+        if (shouldProceed() == ThrottleResult.PROCEED) {
+            return CompletableFuture.completedFuture(Boolean.TRUE);
+        }
+        if (timeout.isZero() || timeout.isNegative()) {
+            return CompletableFuture.completedFuture(Boolean.FALSE);
+        }
+        var future = new CompletableFuture<Boolean>();
+        future.completeOnTimeout(Boolean.FALSE, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        retryShouldProceed(future, Boolean.TRUE, TimeUnit.MILLISECONDS.toNanos(1));
+        return future;
+    }
+
+    private <T> void retryShouldProceed(CompletableFuture<T> future, T grantedValue, long delayNanos) {
+        CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            if (shouldProceed() == ThrottleResult.PROCEED) {
+                future.complete(grantedValue);
+            } else {
+                retryShouldProceed(future, grantedValue, Math.min(2 * delayNanos, TimeUnit.MILLISECONDS.toNanos(100)));
+            }
+        });
+    }
+
     enum ThrottleResult {
         PROCEED,
         DO_NOT_PROCEED
@@ -1,28 +1,51 @@
 package michelerossi.throttling;
 
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import lombok.extern.slf4j.Slf4j;
 
 import michelerossi.Stoppable;
 import michelerossi.eventbus.EventBus;
+import michelerossi.scheduling.HashedTimingWheel;
 import michelerossi.statistics.SlidingWindowStatistics;
 import michelerossi.statistics.SlidingWindowStatisticsImpl;
 
 /**
  * Time-based implementation of {@link Throttler}. <br>
- * The idea is to measure the average number of 'hits' per unit of time as measured via a sliding time window.
+ * The idea is to measure the average number of 'hits' per unit of time as measured via a sliding time window. <br>
+ * With striped hit counting enabled, {@link #hit()} only increments a {@link LongAdder}: concurrent hits do not contend
+ * on a single counter, and the bus notification and logging only happen when the hits of the current interval reach the
+ * limit. Summing the counters reads all the cells, so while the status is {@link ThrottleResult#PROCEED} each thread
+ * only compares the sum to the limit after a countdown of its own hits, set to 1/64 of the hits left before the limit
+ * and restarted with every sample interval: the sums are rare far from the limit, a single thread detects the limit
+ * exactly and <code>T</code> threads hitting concurrently exceed it by at most <code>T/64</code> of the limit. <br>
+ * The sampling task runs either on a {@link ScheduledExecutorService} or on a {@link HashedTimingWheel}, the latter being
+ * preferable when an application creates many throttlers. <br>
+ * Callers waiting in {@link #acquire()} are granted their permits, each counting as a hit, when the status changes back
+ * to {@link ThrottleResult#PROCEED}, in FIFO order and only until the limit is reached again: with striped hit counting
+ * the counters are summed for every permit granted, without the countdown. <br>
+ * Status changes are recorded as {@link ThrottleStatusChangeEvent} flight recorder events.
  */
 @Slf4j
 public class TimeBasedThrottler implements Throttler, Stoppable {
+    private static final int HIT_CHECK_DIVISOR = 64;
+
     private final AtomicInteger numHits = new AtomicInteger();
+    private final LongAdder stripedHits;
+    // the countdown of hits of the thread before it sums the counters, and the sample interval it was set in
+    private final ThreadLocal<int[]> hitsUntilCheck = ThreadLocal.withInitial(() -> new int[2]);
+    private final AtomicInteger samplingEpoch = new AtomicInteger();
+    private final PermitWaiterQueue waiters = new PermitWaiterQueue(this::tryHit, this::takeHitBack, null);
     private final AtomicReference<ThrottleResult> lastResult = new AtomicReference<>(ThrottleResult.DO_NOT_PROCEED);
-    private final ScheduledFuture<?> samplingFuture;
+    private final Stoppable sampling;
     private final SlidingWindowStatistics statistics;
     private final EventBus eventBus;
     private final int maxHitsPerInterval;
@@ -34,16 +57,118 @@ public class TimeBasedThrottler implements Throttler, Stoppable {
         int numSamples,
         int sampleInterval,
         TimeUnit sampleIntervalTimeUnit) {
+        this(executorService, eventBus, maxHitsPerInterval, numSamples, sampleInterval, sampleIntervalTimeUnit, false);
+    }
+
+    /**
+     * Constructor
+     * @param executorService        the executor used to sample the number of hits
+     * @param eventBus               the event bus used to publish statistics and status changes
+     * @param maxHitsPerInterval     the maximum average number of hits per sample interval
+     * @param numSamples             the number of samples of the sliding window
+     * @param sampleInterval         the sample interval
+     * @param sampleIntervalTimeUnit the time unit of sampleInterval
+     * @param stripedHitCounting     true to count hits with striped counters and notify only status changes, for high hit rates
+     */
+    public TimeBasedThrottler(
+        ScheduledExecutorService executorService,
+        EventBus eventBus,
+        int maxHitsPerInterval,
+        int numSamples,
+        int sampleInterval,
+        TimeUnit sampleIntervalTimeUnit,
+        boolean stripedHitCounting) {
+        this(
+            samplingTask -> {
+                var samplingFuture = executorService.scheduleAtFixedRate(samplingTask, sampleInterval, sampleInterval, sampleIntervalTimeUnit);
+                return () -> samplingFuture.cancel(true);
+            },
+            eventBus,
+            maxHitsPerInterval,
+            new SlidingWindowStatisticsImpl(eventBus, numSamples),
+            stripedHitCounting);
+    }
+
+    /**
+     * Constructor sampling the number of hits on a shared timing wheel
+     * @param timingWheel            the timing wheel used to sample the number of hits
+     * @param eventBus               the event bus used to publish statistics and status changes
+     * @param maxHitsPerInterval     the maximum average number of hits per sample interval
+     * @param numSamples             the number of samples of the sliding window
+     * @param sampleInterval         the sample interval
+     * @param sampleIntervalTimeUnit the time unit of sampleInterval
+     * @param stripedHitCounting     true to count hits with striped counters and notify only status changes, for high hit rates
+     */
+    public TimeBasedThrottler(
+        HashedTimingWheel timingWheel,
+        EventBus eventBus,
+        int maxHitsPerInterval,
+        int numSamples,
+        int sampleInterval,
+        TimeUnit sampleIntervalTimeUnit,
+        boolean stripedHitCounting) {
+        this(
+            samplingTask -> {
+                var samplingTimeout = timingWheel.scheduleAtFixedRate(samplingTask, sampleInterval, sampleInterval, sampleIntervalTimeUnit);
+                return samplingTimeout::cancel;
+            },
+            eventBus,
+            maxHitsPerInterval,
+            new SlidingWindowStatisticsImpl(eventBus, numSamples),
+            stripedHitCounting);
+    }
+
+    /**
+     * Constructor using the specified statistics of the number of hits per sample interval, e.g. a {@link SlidingWindowStatisticsImpl}
+     * on an {@link michelerossi.statistics.OffHeapIntShiftBuffer} resumed from a file after a restart, or a
+     * {@link michelerossi.statistics.DecayingSlidingWindowStatistics} weighting the recent hits without keeping a window. <br>
+     * If the statistics already hold a full window the throttle status is resumed from it, otherwise the window is filled
+     * with <code>maxHitsPerInterval</code> as with the other constructors.
+     * @param executorService        the executor used to sample the number of hits
+     * @param eventBus               the event bus used to publish status changes, also used by the statistics
+     * @param maxHitsPerInterval     the maximum average number of hits per sample interval
+     * @param statistics             the statistics of the number of hits per sample interval
+     * @param sampleInterval         the sample interval
+     * @param sampleIntervalTimeUnit the time unit of sampleInterval
+     * @param stripedHitCounting     true to count hits with striped counters and notify only status changes, for high hit rates
+     */
+    public TimeBasedThrottler(
+        ScheduledExecutorService executorService,
+        EventBus eventBus,
+        int maxHitsPerInterval,
+        SlidingWindowStatistics statistics,
+        int sampleInterval,
+        TimeUnit sampleIntervalTimeUnit,
+        boolean stripedHitCounting) {
+        this(
+            samplingTask -> {
+                var samplingFuture = executorService.scheduleAtFixedRate(samplingTask, sampleInterval, sampleInterval, sampleIntervalTimeUnit);
+                return () -> samplingFuture.cancel(true);
+            },
+            eventBus,
+            maxHitsPerInterval,
+            statistics,
+            stripedHitCounting);
+    }
+
+    private TimeBasedThrottler(
+        Function<Runnable, Stoppable> samplingScheduler,
+        EventBus eventBus,
+        int maxHitsPerInterval,
+        SlidingWindowStatistics statistics,
+        boolean stripedHitCounting) {
         this.eventBus = eventBus;
         this.maxHitsPerInterval = maxHitsPerInterval;
-        this.statistics = new SlidingWindowStatisticsImpl(eventBus, numSamples);
-        this.samplingFuture = executorService.scheduleAtFixedRate(
-            getAddSampleRunnable(),
-            sampleInterval,
-            sampleInterval,
-            sampleIntervalTimeUnit);
+        this.stripedHits = stripedHitCounting ? new LongAdder() : null;
+        this.statistics = statistics;
+        this.sampling = samplingScheduler.apply(getAddSampleRunnable());
         this.statistics.subscribeForStatistics(stats -> publishStatusUpdate(stats.getMean()));
-        this.statistics.fillBuffer(maxHitsPerInterval);
+        var resumedStats = this.statistics.getLatestStatistics();
+        if (resumedStats == null) {
+            this.statistics.fillBuffer(maxHitsPerInterval);
+        } else {
+            publishStatusUpdate(resumedStats.getMean());
+        }
     }
 
     private void publishStatusUpdate(double numHits) {
@@ -51,20 +176,108 @@ public class TimeBasedThrottler implements Throttler, Stoppable {
         log.info("Stats received, num hits {}, throttle {}", numHits, newResult);
         var oldResult = lastResult.getAndSet(newResult);
         if (oldResult != newResult) {
+            recordStatusChange(oldResult, newResult, numHits);
             eventBus.publishEvent(newResult);
+            if (newResult == ThrottleResult.PROCEED) {
+                waiters.release();
+            }
+        }
+    }
+
+    private void recordStatusChange(ThrottleResult oldResult, ThrottleResult newResult, double numHits) {
+        var statusChangeEvent = new ThrottleStatusChangeEvent();
+        if (statusChangeEvent.shouldCommit()) {
+            statusChangeEvent.throttler = toString();
+            statusChangeEvent.oldStatus = oldResult.name();
+            statusChangeEvent.newStatus = newResult.name();
+            statusChangeEvent.numHits = numHits;
+            statusChangeEvent.commit();
         }
     }
 
     public void hit() {
+        if (stripedHits != null) {
+            stripedHit();
+            return;
+        }
         var currentNumHits = this.numHits.incrementAndGet();
         publishStatusUpdate(currentNumHits);
     }
 
+    private void stripedHit() {
+        stripedHits.increment();
+        // once throttled, only the sampling task can lift the throttling: no need to sum the counters
+        if (lastResult.get() != ThrottleResult.PROCEED) {
+            return;
+        }
+        var countdown = hitsUntilCheck.get();
+        var epoch = samplingEpoch.get();
+        // a countdown set in a previous interval is not carried over the reset of the counters
+        if (countdown[1] == epoch && --countdown[0] > 0) {
+            return;
+        }
+        // up to HIT_CHECK_DIVISOR threads counting down concurrently cannot overshoot the limit before one of them sums
+        var currentNumHits = stripedHits.sum();
+        countdown[0] = (int) Math.max(1, (maxHitsPerInterval - currentNumHits) / HIT_CHECK_DIVISOR);
+        countdown[1] = epoch;
+        if (currentNumHits >= maxHitsPerInterval) {
+            stripedLimitReached();
+        }
+    }
+
+    private void stripedLimitReached() {
+        if (lastResult.compareAndSet(ThrottleResult.PROCEED, ThrottleResult.DO_NOT_PROCEED)) {
+            log.info("Num hits reached {}, throttle {}", maxHitsPerInterval, ThrottleResult.DO_NOT_PROCEED);
+            recordStatusChange(ThrottleResult.PROCEED, ThrottleResult.DO_NOT_PROCEED, maxHitsPerInterval);
+            eventBus.publishEvent(ThrottleResult.DO_NOT_PROCEED);
+        }
+    }
+
     @Override
     public ThrottleResult shouldProceed() {
         return lastResult.get();
     }
 
+    @Override
+    public CompletableFuture<Void> acquire() {
+        return waiters.acquire();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> tryAcquire(Duration timeout) {
+        return waiters.tryAcquire(timeout);
+    }
+
+    private boolean tryHit() {
+        if (shouldProceed() != ThrottleResult.PROCEED) {
+            return false;
+        }
+        if (stripedHits == null) {
+            hit();
+            return true;
+        }
+        // the countdown of hit() could grant permits past the limit: the counters are summed for every permit
+        stripedHits.increment();
+        var currentNumHits = stripedHits.sum();
+        if (currentNumHits > maxHitsPerInterval) {
+            stripedHits.decrement();
+            stripedLimitReached();
+            return false;
+        }
+        if (currentNumHits == maxHitsPerInterval) {
+            stripedLimitReached();
+        }
+        return true;
+    }
+
+    private void takeHitBack() {
+        if (stripedHits != null) {
+            stripedHits.decrement();
+        } else {
+            numHits.decrementAndGet();
+        }
+    }
+
     @Override
     public void notifyWhenCanProceed(Consumer<ThrottleResult> throttleResultConsumer) {
         eventBus.addSubscriber(ThrottleResult.class, throttleResultConsumer);
@@ -72,15 +285,16 @@ public class TimeBasedThrottler implements Throttler, Stoppable {
 
     @Override
     public void stop() {
-        if (samplingFuture != null) {
-            samplingFuture.cancel(true);
+        if (sampling != null) {
+            sampling.stop();
         }
         log.info("{} stopped", this);
     }
 
     private Runnable getAddSampleRunnable() {
         return () -> {
-            int numHitsPeriod = this.numHits.getAndSet(0);
+            int numHitsPeriod = stripedHits != null ? (int) stripedHits.sumThenReset() : this.numHits.getAndSet(0);
+            samplingEpoch.incrementAndGet();
             statistics.add(numHitsPeriod);
             log.info("Added numHits sample {}", numHitsPeriod);
         };
@@ -1,11 +1,15 @@
 package michelerossi.eventbus;
 
+import java.nio.file.Files;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -119,4 +123,39 @@ class TestConcurrentEventBus {
 
         concurrentBus.stop();
     }
+
+    @Test
+    void testQueueWaitRecordedByFlightRecorder() throws Exception {
+        var concurrentBus = new ConcurrentEventBus();
+        var cdLatch = new CountDownLatch(3);
+        concurrentBus.addSubscriber(Integer.class, itg -> {
+            sleep(itg);
+            cdLatch.countDown();
+        });
+
+        var recordingFile = Files.createTempFile("queue-wait", ".jfr");
+        try (var recording = new Recording()) {
+            recording.enable("michelerossi.eventbus.Dispatch").withThreshold(Duration.ofMillis(10));
+            recording.start();
+            // the second event waits in the queue while the first one is consumed
+            concurrentBus.publishEvent(200);
+            concurrentBus.publishEvent(20);
+            // delivered once the second event has been recorded, which happens after its subscriber returned
+            concurrentBus.publishEvent(0);
+            assertTrue(cdLatch.await(5, TimeUnit.SECONDS));
+            recording.stop();
+            recording.dump(recordingFile);
+
+            var queueWaits = RecordingFile.readAllEvents(recordingFile).stream()
+                .filter(event -> event.getEventType().getName().equals("michelerossi.eventbus.Dispatch"))
+                .filter(event -> event.getDuration().toMillis() < 200)
+                .map(event -> event.getDuration("queueWait"))
+                .toList();
+            assertEquals(1, queueWaits.size());
+            assertTrue(queueWaits.get(0).toMillis() >= 150, "queue wait " + queueWaits.get(0));
+        } finally {
+            Files.deleteIfExists(recordingFile);
+        }
+        concurrentBus.stop();
+    }
 }
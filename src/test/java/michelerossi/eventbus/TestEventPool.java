@@ -0,0 +1,258 @@
+package michelerossi.eventbus;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/** Tests for {@link EventPool} and the handling of {@link PooledEvent} by the event buses */
+class TestEventPool {
+
+    private static class ValueEvent extends PooledEvent {
+        private final AtomicInteger numResets;
+        int value;
+
+        ValueEvent(AtomicInteger numResets) {
+            this.numResets = numResets;
+        }
+
+        @Override
+        protected void reset() {
+            value = 0;
+            numResets.incrementAndGet();
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean allocationMXBean() {
+        var threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        var allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(allocationMXBean.isThreadAllocatedMemorySupported() && allocationMXBean.isThreadAllocatedMemoryEnabled());
+        return allocationMXBean;
+    }
+
+    /** Runs the action with the event bus debug logging, which allocates, disabled */
+    private static void withoutDebugLogging(Runnable action) {
+        var logger = (Logger) LoggerFactory.getLogger(SimpleEventBus.class.getPackageName());
+        var previousLevel = logger.getLevel();
+        logger.setLevel(Level.INFO);
+        try {
+            action.run();
+        } finally {
+            logger.setLevel(previousLevel);
+        }
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    void testClaimAndRelease() {
+        var numResets = new AtomicInteger();
+        var pool = new EventPool<>(1, () -> new ValueEvent(numResets));
+        var event = pool.claim();
+        event.value = 42;
+        assertEquals(1, event.getRefCount());
+        assertEquals(0, pool.getNumAvailable());
+
+        // the pool is empty, a new event is allocated
+        var extraEvent = pool.claim();
+        assertNotSame(event, extraEvent);
+        assertEquals(2, pool.getNumAllocated());
+
+        event.retain();
+        event.release();
+        assertEquals(0, numResets.get());
+        event.release();
+        assertEquals(1, numResets.get());
+        assertEquals(0, event.value);
+        assertEquals(0, event.getRefCount());
+        assertThrows(IllegalStateException.class, event::release);
+        assertThrows(IllegalStateException.class, event::retain);
+        assertFalse(event.tryRetain());
+
+        // no free slot left, the extra event is dropped
+        extraEvent.release();
+        assertEquals(1, pool.getNumAvailable());
+        assertSame(event, pool.claim());
+    }
+
+    @Test
+    void testReleasedAfterSynchronousDelivery() {
+        var numResets = new AtomicInteger();
+        var pool = new EventPool<>(2, () -> new ValueEvent(numResets));
+        var eventBus = new SimpleEventBus();
+        var sum = new AtomicInteger();
+        eventBus.addSubscriber(ValueEvent.class, event -> sum.addAndGet(event.value));
+        eventBus.addSubscriber(ValueEvent.class, event -> sum.addAndGet(event.value));
+
+        for (int i = 1; i <= 100; i++) {
+            var event = pool.claim();
+            event.value = i;
+            eventBus.publishEvent(event);
+        }
+        assertEquals(2 * 5050, sum.get());
+        assertEquals(100, numResets.get());
+        assertEquals(2, pool.getNumAllocated());
+    }
+
+    @Test
+    void testReleasedAfterAsynchronousDelivery() throws InterruptedException {
+        var numResets = new AtomicInteger();
+        var pool = new EventPool<>(4, () -> new ValueEvent(numResets));
+        var eventBus = new ConcurrentEventBus();
+        var values = new CopyOnWriteArrayList<Integer>();
+        eventBus.addSubscriber(ValueEvent.class, event -> values.add(event.value));
+
+        for (int i = 1; i <= 10; i++) {
+            var event = pool.claim();
+            event.value = i;
+            eventBus.publishEvent(event);
+            var numDelivered = i;
+            awaitCondition(() -> values.size() == numDelivered);
+        }
+        awaitCondition(() -> numResets.get() == 10);
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), values);
+        assertEquals(4, pool.getNumAllocated());
+        assertEquals(4, pool.getNumAvailable());
+        eventBus.stop();
+    }
+
+    @Test
+    void testReleasedWhenDroppedByCoalescing() throws InterruptedException {
+        var numResets = new AtomicInteger();
+        var pool = new EventPool<>(4, () -> new ValueEvent(numResets));
+        var eventBus = new ConcurrentEventBus();
+        var values = new CopyOnWriteArrayList<Integer>();
+        var consuming = new CountDownLatch(1);
+        var proceed = new CountDownLatch(1);
+        eventBus.addSubscriber(ValueEvent.class, event -> {
+            values.add(event.value);
+            consuming.countDown();
+            try {
+                proceed.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        for (int i = 1; i <= 4; i++) {
+            var event = pool.claim();
+            event.value = i;
+            eventBus.publishEventCoalesce(event);
+            if (i == 1) {
+                assertTrue(consuming.await(5, TimeUnit.SECONDS));
+            }
+        }
+        // events 2 and 3 were dropped while event 1 was being consumed
+        assertEquals(2, numResets.get());
+        proceed.countDown();
+        awaitCondition(() -> numResets.get() == 4);
+        assertEquals(List.of(1, 4), values);
+        assertEquals(4, pool.getNumAllocated());
+        eventBus.stop();
+    }
+
+    @Test
+    void testUnclaimedEventsNotReferenceCounted() throws InterruptedException {
+        var numResets = new AtomicInteger();
+        var values = new CopyOnWriteArrayList<Integer>();
+        var simpleEventBus = new SimpleEventBus();
+        simpleEventBus.addSubscriber(ValueEvent.class, event -> values.add(event.value));
+        var concurrentEventBus = new ConcurrentEventBus();
+        concurrentEventBus.addSubscriber(ValueEvent.class, event -> values.add(event.value));
+
+        // created directly rather than claimed from a pool, the events are delivered like plain events
+        var event = new ValueEvent(numResets);
+        event.value = 1;
+        simpleEventBus.publishEvent(event);
+        concurrentEventBus.publishEvent(event);
+        awaitCondition(() -> values.size() == 2);
+        concurrentEventBus.publishEventCoalesce(event);
+        awaitCondition(() -> values.size() == 3);
+        assertEquals(List.of(1, 1, 1), values);
+        assertEquals(0, event.getRefCount());
+        assertEquals(0, numResets.get());
+        concurrentEventBus.stop();
+    }
+
+    @Test
+    void testSynchronousPublishingDoesNotAllocate() {
+        var allocationMXBean = allocationMXBean();
+        var pool = new EventPool<>(1, () -> new ValueEvent(new AtomicInteger()));
+        var eventBus = new SimpleEventBus();
+        var sum = new AtomicInteger();
+        eventBus.addSubscriber(ValueEvent.class, event -> sum.addAndGet(event.value));
+
+        var numEvents = 100_000;
+        var allocatedBytes = new AtomicLong();
+        withoutDebugLogging(() -> {
+            // the first round resolves the subscribers and warms up the publishing path
+            for (int round = 0; round < 2; round++) {
+                var before = allocationMXBean.getCurrentThreadAllocatedBytes();
+                for (int i = 0; i < numEvents; i++) {
+                    var event = pool.claim();
+                    event.value = 1;
+                    eventBus.publishEvent(event);
+                }
+                allocatedBytes.set(allocationMXBean.getCurrentThreadAllocatedBytes() - before);
+            }
+        });
+        assertEquals(2 * numEvents, sum.get());
+        assertEquals(1, pool.getNumAllocated());
+        assertTrue(allocatedBytes.get() < numEvents, allocatedBytes + " bytes allocated publishing " + numEvents + " events");
+    }
+
+    @Test
+    void testAsynchronousPublishingDoesNotAllocate() {
+        var allocationMXBean = allocationMXBean();
+        var pool = new EventPool<>(2, () -> new ValueEvent(new AtomicInteger()));
+        var eventBus = new ConcurrentEventBus();
+        var numDelivered = new AtomicInteger();
+        eventBus.addSubscriber(ValueEvent.class, event -> numDelivered.incrementAndGet());
+
+        var numEvents = 10_000;
+        var allocatedBytes = new AtomicLong();
+        withoutDebugLogging(() -> {
+            // the first round starts the dispatch thread and warms up the publishing path
+            for (int round = 0; round < 2; round++) {
+                allocatedBytes.set(0);
+                for (int i = 0; i < numEvents; i++) {
+                    var before = allocationMXBean.getCurrentThreadAllocatedBytes();
+                    eventBus.publishEvent(pool.claim());
+                    allocatedBytes.addAndGet(allocationMXBean.getCurrentThreadAllocatedBytes() - before);
+                    // one event queued at a time, so that the pool and the queue never grow
+                    var expected = round * numEvents + i + 1;
+                    while (numDelivered.get() < expected) {
+                        Thread.onSpinWait();
+                    }
+                }
+            }
+        });
+        assertEquals(2, pool.getNumAllocated());
+        assertTrue(allocatedBytes.get() < numEvents, allocatedBytes + " bytes allocated publishing " + numEvents + " events");
+        eventBus.stop();
+    }
+}
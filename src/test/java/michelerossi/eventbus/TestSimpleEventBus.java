@@ -1,16 +1,21 @@
 package michelerossi.eventbus;
 
+import java.nio.file.Files;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
 import lombok.extern.slf4j.Slf4j;
 
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /** JUnit tests for {@link SimpleEventBus} */
 @Slf4j
@@ -110,6 +115,41 @@ class TestSimpleEventBus {
         assertEquals(4, valueRef.get());
     }
 
+    @Test
+    void testSlowDispatchRecordedByFlightRecorder() throws Exception {
+        var eventBus = new SimpleEventBus();
+        eventBus.addSubscriber(Integer.class, i -> {
+            try {
+                Thread.sleep(i);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // the first delivery loads and initializes classes, which could take longer than the threshold
+        eventBus.publishEvent(0);
+
+        var recordingFile = Files.createTempFile("dispatch", ".jfr");
+        try (var recording = new Recording()) {
+            recording.enable("michelerossi.eventbus.Dispatch").withThreshold(Duration.ofMillis(10));
+            recording.start();
+            eventBus.publishEvent(0);
+            eventBus.publishEvent(30);
+            recording.stop();
+            recording.dump(recordingFile);
+
+            var dispatchEvents = RecordingFile.readAllEvents(recordingFile).stream()
+                .filter(event -> event.getEventType().getName().equals("michelerossi.eventbus.Dispatch"))
+                .toList();
+            // only the slow delivery is above the threshold
+            assertEquals(1, dispatchEvents.size());
+            assertEquals(Integer.class.getName(), dispatchEvents.get(0).getClass("eventType").getName());
+            assertTrue(dispatchEvents.get(0).getDuration().toMillis() >= 30);
+        } finally {
+            Files.deleteIfExists(recordingFile);
+        }
+    }
+
     private interface TestMessage {
         int value();
     }
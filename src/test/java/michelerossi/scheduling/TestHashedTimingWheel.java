@@ -0,0 +1,88 @@
+package michelerossi.scheduling;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests for {@link HashedTimingWheel} */
+class TestHashedTimingWheel {
+    private HashedTimingWheel timingWheel;
+
+    private static void sleep(long timeMs) {
+        try {
+            Thread.sleep(timeMs);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @BeforeEach
+    void startWheel() {
+        // a small wheel so that the tests also cover tasks spanning several rounds
+        timingWheel = new HashedTimingWheel("test", 10, TimeUnit.MILLISECONDS, 8);
+    }
+
+    @AfterEach
+    void stopWheel() {
+        timingWheel.stop();
+    }
+
+    @Test
+    void testOneOffTaskAfterSeveralRounds() throws InterruptedException {
+        var latch = new CountDownLatch(1);
+        var start = System.nanoTime();
+        timingWheel.schedule(latch::countDown, 250, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        var elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMs >= 250, "task ran too early, after " + elapsedMs + " ms");
+    }
+
+    @Test
+    void testFixedRateAndCancel() {
+        var numRuns = new AtomicInteger();
+        var timeout = timingWheel.scheduleAtFixedRate(numRuns::incrementAndGet, 50, 50, TimeUnit.MILLISECONDS);
+        sleep(530);
+        assertTrue(timeout.cancel());
+        var numRunsAtCancel = numRuns.get();
+        assertEquals(10, numRunsAtCancel, 2);
+
+        sleep(200);
+        assertEquals(numRunsAtCancel, numRuns.get());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    void testPeriodEqualToWheelSpan() {
+        var numRuns = new AtomicInteger();
+        // 8 buckets of 10 ms: every run lands in the bucket which has just been visited
+        var timeout = timingWheel.scheduleAtFixedRate(numRuns::incrementAndGet, 80, 80, TimeUnit.MILLISECONDS);
+        sleep(500);
+        timeout.cancel();
+        assertEquals(6, numRuns.get(), 1);
+    }
+
+    @Test
+    void testCancelledTaskNeverRuns() {
+        var numRuns = new AtomicInteger();
+        var timeouts = new HashedTimingWheel.Timeout[1000];
+        for (int i = 0; i < timeouts.length; i++) {
+            timeouts[i] = timingWheel.schedule(numRuns::incrementAndGet, 20 + i % 100, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 0; i < timeouts.length; i += 2) {
+            timeouts[i].cancel();
+        }
+        sleep(400);
+        assertEquals(500, numRuns.get());
+        assertFalse(timeouts[1].cancel());
+        assertTrue(timeouts[0].isCancelled());
+    }
+}
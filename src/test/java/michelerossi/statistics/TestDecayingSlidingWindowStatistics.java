@@ -0,0 +1,167 @@
+package michelerossi.statistics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import michelerossi.eventbus.SimpleEventBus;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests for {@link DecayingSlidingWindowStatistics} */
+class TestDecayingSlidingWindowStatistics {
+    private static final long HALF_LIFE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private DecayingSlidingWindowStatistics createStatistics(SimpleEventBus eventBus) {
+        return new DecayingSlidingWindowStatistics(eventBus, 1, TimeUnit.SECONDS, clock::get);
+    }
+
+    @Test
+    void testConstantSamples() {
+        var eventBus = new SimpleEventBus();
+        var statsRef = new AtomicReference<SlidingWindowStatistics.Statistics>();
+        var stats = createStatistics(eventBus);
+        stats.subscribeForStatistics(statsRef::set);
+        assertNull(stats.getLatestStatistics());
+
+        for (int i = 0; i < 10; i++) {
+            stats.add(7);
+            clock.addAndGet(HALF_LIFE_NANOS / 10);
+        }
+        var latestStats = stats.getLatestStatistics();
+        assertEquals(7.0, latestStats.getMean(), 0.00001);
+        assertEquals(0.0, latestStats.getVariance(), 0.00001);
+        assertEquals(7, latestStats.getMode());
+        assertEquals(7, latestStats.getMin());
+        assertEquals(7, latestStats.getMax());
+        assertEquals(7, latestStats.getPctile(95));
+        assertNotNull(statsRef.get());
+        assertEquals(7.0, statsRef.get().getMean(), 0.00001);
+    }
+
+    @Test
+    void testOlderSamplesWeighLess() {
+        var stats = createStatistics(new SimpleEventBus());
+        stats.add(100);
+        clock.addAndGet(HALF_LIFE_NANOS);
+        stats.add(0);
+        // the first sample is one half-life old, it weighs half as much as the second one
+        var latestStats = stats.getLatestStatistics();
+        assertEquals(100.0 / 3, latestStats.getMean(), 0.00001);
+        assertEquals(2 * 100.0 * 100 / 9, latestStats.getVariance(), 0.001);
+        assertEquals(0, latestStats.getMode());
+        assertEquals(100, latestStats.getMax(), 100 / 16.0);
+
+        clock.addAndGet(40 * HALF_LIFE_NANOS);
+        stats.add(0);
+        // the first sample is now negligible
+        assertEquals(0, stats.getLatestStatistics().getMax());
+        assertEquals(0.0, stats.getLatestStatistics().getMean(), 0.00001);
+    }
+
+    @Test
+    void testPercentiles() {
+        var stats = createStatistics(new SimpleEventBus());
+        for (int i = 1; i <= 1000; i++) {
+            stats.add(i);
+        }
+        var latestStats = stats.getLatestStatistics();
+        assertEquals(500.5, latestStats.getMean(), 0.00001);
+        assertEquals(500, latestStats.getPctile(50), 500 / 16.0);
+        assertEquals(950, latestStats.getPctile(95), 950 / 16.0);
+        assertEquals(1, latestStats.getMin());
+        assertEquals(1000, latestStats.getMax(), 1000 / 16.0);
+    }
+
+    @Test
+    void testRescaledAfterManyHalfLives() {
+        var stats = createStatistics(new SimpleEventBus());
+        for (int i = 0; i < 1000; i++) {
+            stats.add(i % 2 == 0 ? 10 : 20);
+            clock.addAndGet(HALF_LIFE_NANOS);
+        }
+        var latestStats = stats.getLatestStatistics();
+        assertTrue(Double.isFinite(latestStats.getMean()));
+        // alternating samples, each weighing twice as much as the previous one
+        assertEquals(20 - 10.0 / 3, latestStats.getMean(), 0.001);
+        assertEquals(20, latestStats.getMode());
+    }
+
+    @Test
+    void testFillBufferDiscardsHistory() {
+        var stats = createStatistics(new SimpleEventBus());
+        stats.add(-500);
+        stats.add(1_000_000);
+        stats.fillBuffer(3);
+        var latestStats = stats.getLatestStatistics();
+        assertEquals(3.0, latestStats.getMean(), 0.00001);
+        assertEquals(3, latestStats.getMin());
+        assertEquals(3, latestStats.getMax());
+    }
+
+    @Test
+    void testPublishedStatisticsReadOnce() {
+        var eventBus = new SimpleEventBus();
+        var statsRef = new AtomicReference<SlidingWindowStatistics.Statistics>();
+        var stats = createStatistics(eventBus);
+        stats.subscribeForStatistics(statsRef::set);
+        stats.add(7);
+        var published = statsRef.get();
+        assertEquals(7.0, published.getMean(), 0.00001);
+        assertEquals(7, published.getMax());
+
+        stats.add(1000);
+        // all the values were read when the mean was first requested
+        assertEquals(7.0, published.getMean(), 0.00001);
+        assertEquals(7, published.getMax());
+        assertEquals(7, published.getPctile(100));
+        assertEquals(1000, statsRef.get().getMax(), 1000 / 16.0);
+        assertEquals(503.5, statsRef.get().getMean(), 0.00001);
+    }
+
+    @Test
+    void testPublishedStatisticsConsistentWithLaterSamples() {
+        var eventBus = new SimpleEventBus();
+        var statsRef = new AtomicReference<SlidingWindowStatistics.Statistics>();
+        var stats = createStatistics(eventBus);
+        stats.subscribeForStatistics(statsRef::set);
+        stats.add(10);
+        var published = statsRef.get();
+        stats.add(10);
+        stats.add(1000);
+
+        // not read before the later samples were added: the percentiles and the mean all include them
+        assertEquals(340.0, published.getMean(), 0.00001);
+        assertEquals(10, published.getPctile(50));
+        assertEquals(1000, published.getPctile(99), 1000 / 16.0);
+        assertEquals(1000, published.getMax(), 1000 / 16.0);
+
+        stats.add(-1000);
+        assertEquals(340.0, published.getMean(), 0.00001);
+        assertEquals(10, published.getMin());
+        assertEquals(1000, published.getPctile(99), 1000 / 16.0);
+    }
+
+    @Test
+    void testBucketsOrderedAndPrecise() {
+        var previousIndex = DecayingSlidingWindowStatistics.bucketIndex(Integer.MIN_VALUE);
+        assertEquals(0, previousIndex);
+        for (long value = Integer.MIN_VALUE; value <= Integer.MAX_VALUE; value += 65_521) {
+            var index = DecayingSlidingWindowStatistics.bucketIndex((int) value);
+            assertTrue(index >= previousIndex);
+            previousIndex = index;
+            var bucketValue = DecayingSlidingWindowStatistics.bucketValue(index);
+            assertEquals(value, bucketValue, Math.abs(value) / 16.0 + 1);
+        }
+        for (int value = -32; value < 32; value++) {
+            assertEquals(value, DecayingSlidingWindowStatistics.bucketValue(DecayingSlidingWindowStatistics.bucketIndex(value)));
+        }
+        assertEquals(previousIndex, DecayingSlidingWindowStatistics.bucketIndex(Integer.MAX_VALUE));
+    }
+}
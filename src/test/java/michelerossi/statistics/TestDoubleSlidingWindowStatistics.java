@@ -0,0 +1,41 @@
+package michelerossi.statistics;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import michelerossi.eventbus.SimpleEventBus;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/** Tests for {@link DoubleSlidingWindowStatisticsImpl} */
+class TestDoubleSlidingWindowStatistics {
+
+    @Test
+    void testPriceStatistics() {
+        var eventBus = new SimpleEventBus();
+        var statsRef = new AtomicReference<DoubleSlidingWindowStatistics.DoubleStatistics>();
+        var stats = new DoubleSlidingWindowStatisticsImpl(eventBus, 3);
+        stats.subscribeForStatistics(statsRef::set);
+
+        stats.add(101.25);
+        stats.add(99.5);
+        stats.add(101.25);
+        stats.add(100.75);
+
+        var latest = statsRef.get();
+        assertNotNull(latest);
+        assertEquals(99.5, latest.getMin());
+        assertEquals(101.25, latest.getMax());
+        assertEquals(100.5, latest.getMean(), 0.000001);
+        assertEquals(99.5, latest.getPctile(1));
+    }
+
+    @Test
+    void testFillBuffer() {
+        var stats = new DoubleSlidingWindowStatisticsImpl(new SimpleEventBus(), 10);
+        stats.fillBuffer(0.125);
+        assertEquals(0.125, stats.getLatestStatistics().getMode());
+        assertEquals(0.125, stats.getLatestStatistics().getMean(), 0.000001);
+    }
+}
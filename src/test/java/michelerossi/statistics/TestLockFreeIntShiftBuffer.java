@@ -0,0 +1,69 @@
+package michelerossi.statistics;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for {@link LockFreeIntShiftBuffer} */
+class TestLockFreeIntShiftBuffer {
+
+    @Test
+    void testSameLayoutAsIntShiftBuffer() {
+        var lockFree = new LockFreeIntShiftBuffer(5);
+        var locking = new IntShiftBuffer(5);
+        for (int i = 1; i <= 12; i++) {
+            lockFree.add(i);
+            locking.add(i);
+            assertArrayEquals(locking.getSamples(), lockFree.getSamples());
+            assertEquals(locking.getCurrentSize(), lockFree.getCurrentSize());
+        }
+        assertArrayEquals(new int[]{8, 9, 10, 11, 12}, lockFree.getSamples());
+    }
+
+    @Test
+    void testCopyIntoReusesBuffer() {
+        var buffer = new LockFreeIntShiftBuffer(3);
+        var destination = new int[4];
+        assertEquals(0, buffer.copyInto(destination));
+        buffer.add(7);
+        assertEquals(1, buffer.copyInto(destination));
+        assertArrayEquals(new int[]{0, 0, 7, 0}, destination);
+        assertThrows(IllegalArgumentException.class, () -> buffer.copyInto(new int[2]));
+    }
+
+    @Test
+    void testConsistentSnapshotsWhileWriting() throws InterruptedException {
+        var bufferSize = 64;
+        var buffer = new LockFreeIntShiftBuffer(bufferSize);
+        var stop = new AtomicBoolean();
+        var failure = new AtomicReference<String>();
+        var writer = new Thread(() -> {
+            var value = 0;
+            while (!stop.get()) {
+                buffer.add(++value);
+            }
+        }, "LockFreeIntShiftBufferWriter");
+        writer.start();
+
+        var snapshot = new int[bufferSize];
+        for (int i = 0; i < 20_000 && failure.get() == null; i++) {
+            var size = buffer.copyInto(snapshot);
+            // samples are written as an increasing sequence, a torn snapshot would break the sequence
+            for (int j = bufferSize - size + 1; j < bufferSize; j++) {
+                if (snapshot[j] != snapshot[j - 1] + 1) {
+                    failure.set("Inconsistent snapshot at index " + j + ": " + snapshot[j - 1] + ", " + snapshot[j]);
+                    break;
+                }
+            }
+        }
+        stop.set(true);
+        writer.join();
+        assertNull(failure.get());
+    }
+}
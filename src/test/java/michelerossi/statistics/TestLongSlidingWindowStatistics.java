@@ -0,0 +1,48 @@
+package michelerossi.statistics;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import michelerossi.eventbus.SimpleEventBus;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/** Tests for {@link LongSlidingWindowStatisticsImpl} */
+class TestLongSlidingWindowStatistics {
+
+    @Test
+    void testNanosecondLatenciesKeepPrecision() {
+        var eventBus = new SimpleEventBus();
+        var statsRef = new AtomicReference<LongSlidingWindowStatistics.LongStatistics>();
+        var stats = new LongSlidingWindowStatisticsImpl(eventBus, 4);
+        stats.subscribeForStatistics(statsRef::set);
+
+        var base = 5_000_000_000L;
+        stats.add(base + 3);
+        stats.add(base + 1);
+        stats.add(base + 1);
+        assertNull(stats.getLatestStatistics());
+        stats.add(base + 7);
+
+        var latest = stats.getLatestStatistics();
+        assertEquals(latest, statsRef.get());
+        assertEquals(base + 1, latest.getMin());
+        assertEquals(base + 7, latest.getMax());
+        assertEquals(base + 1, latest.getMode());
+        assertEquals(base + 3, latest.getPctile(60));
+        assertEquals(base + 3.0, latest.getMean(), 0.001);
+    }
+
+    @Test
+    void testShiftBufferOrder() {
+        var buffer = new LongShiftBuffer(3);
+        buffer.add(1L);
+        buffer.add(2L);
+        buffer.add(3L);
+        buffer.add(4L);
+        assertArrayEquals(new long[]{2L, 3L, 4L}, buffer.getSamples());
+        assertEquals(3, buffer.getCurrentSize());
+    }
+}
@@ -0,0 +1,62 @@
+package michelerossi.statistics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for {@link MultiSeriesStatistics} */
+class TestMultiSeriesStatistics {
+
+    @Test
+    void testIndependentSeries() {
+        var stats = new MultiSeriesStatistics<String>(3, 2);
+        stats.add("/orders", 10);
+        stats.add("/orders", 20);
+        stats.add("/users", 5);
+        assertNull(stats.getStatistics("/orders"));
+
+        stats.add("/orders", 30);
+        stats.add("/orders", 40);
+        assertEquals(30.0, stats.getStatistics("/orders").getMean(), 0.00001);
+        assertEquals(20, stats.getStatistics("/orders").getMin());
+        assertNull(stats.getStatistics("/users"));
+        assertNull(stats.getStatistics("/unknown"));
+
+        var samples = new int[3];
+        assertEquals(1, stats.copySamples("/users", samples));
+        assertArrayEquals(new int[]{0, 0, 5}, samples);
+        assertThrows(IllegalArgumentException.class, () -> stats.copySamples("/users", new int[2]));
+    }
+
+    @Test
+    void testSnapshotOnlyFullSeries() {
+        var stats = new MultiSeriesStatistics<Integer>(10);
+        IntStream.range(0, 1000).forEach(customer -> IntStream.range(0, 10).forEach(i -> stats.add(customer, customer + i)));
+        stats.add(5000, 1);
+
+        var snapshot = stats.snapshot();
+        assertEquals(1001, stats.size());
+        assertEquals(1000, snapshot.size());
+        assertEquals(704.5, snapshot.get(700).getMean(), 0.00001);
+        assertEquals(709, snapshot.get(700).getMax());
+    }
+
+    @Test
+    void testEvictIdle() throws InterruptedException {
+        var stats = new MultiSeriesStatistics<String>(2);
+        stats.add("idle", 1);
+        Thread.sleep(50);
+        stats.add("active", 1);
+
+        assertEquals(1, stats.evictIdle(25, TimeUnit.MILLISECONDS));
+        assertEquals(1, stats.size());
+        assertEquals(0, stats.copySamples("idle", new int[2]));
+        assertEquals(1, stats.copySamples("active", new int[2]));
+    }
+}
@@ -0,0 +1,110 @@
+package michelerossi.statistics;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import michelerossi.eventbus.SimpleEventBus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Tests for {@link OffHeapIntShiftBuffer} */
+class TestOffHeapIntShiftBuffer {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSameBehaviourAsIntShiftBuffer() {
+        var offHeap = OffHeapIntShiftBuffer.allocateDirect(5);
+        var onHeap = new IntShiftBuffer(5);
+        for (int i = 1; i <= 12; i++) {
+            assertEquals(onHeap.add(i), offHeap.add(i));
+            assertArrayEquals(onHeap.getSamples(), offHeap.getSamples());
+            assertEquals(onHeap.getCurrentSize(), offHeap.getCurrentSize());
+        }
+        assertArrayEquals(new int[]{8, 9, 10, 11, 12}, offHeap.getSamples());
+    }
+
+    @Test
+    void testSnapshotAndReload() {
+        var buffer = OffHeapIntShiftBuffer.allocateDirect(4);
+        buffer.add(1);
+        buffer.add(2);
+        buffer.add(3);
+        var snapshot = tempDir.resolve("window.snapshot");
+        buffer.snapshotTo(snapshot);
+        // samples added after the snapshot are not part of it
+        buffer.add(4);
+
+        var reloaded = OffHeapIntShiftBuffer.loadSnapshot(snapshot);
+        assertEquals(4, reloaded.getBufferSize());
+        assertEquals(3, reloaded.getCurrentSize());
+        assertArrayEquals(new int[]{0, 1, 2, 3}, reloaded.getSamples());
+        reloaded.add(4);
+        assertEquals(1, reloaded.add(5));
+        assertArrayEquals(new int[]{2, 3, 4, 5}, reloaded.getSamples());
+    }
+
+    @Test
+    void testMappedFileResumesSamples() {
+        var file = tempDir.resolve("window.mapped");
+        var buffer = OffHeapIntShiftBuffer.mapFile(file, 3);
+        for (int i = 1; i <= 4; i++) {
+            buffer.add(i);
+        }
+
+        var resumed = OffHeapIntShiftBuffer.mapFile(file, 3);
+        assertEquals(3, resumed.getCurrentSize());
+        assertArrayEquals(new int[]{2, 3, 4}, resumed.getSamples());
+        assertThrows(IllegalArgumentException.class, () -> OffHeapIntShiftBuffer.mapFile(file, 5));
+    }
+
+    @Test
+    void testCloseUnmapsFile() throws Exception {
+        var file = tempDir.resolve("window.mapped");
+        try (var buffer = OffHeapIntShiftBuffer.mapFile(file, 3)) {
+            buffer.add(7);
+            buffer.close();
+            assertThrows(IllegalStateException.class, () -> buffer.add(8));
+            assertThrows(IllegalStateException.class, buffer::getSamples);
+            assertThrows(IllegalStateException.class, () -> buffer.snapshotTo(tempDir.resolve("closed.snapshot")));
+        }
+        var processMappings = Path.of("/proc/self/maps");
+        if (Files.exists(processMappings)) {
+            assertFalse(Files.readString(processMappings).contains(file.toString()));
+        }
+
+        try (var resumed = OffHeapIntShiftBuffer.mapFile(file, 3)) {
+            assertArrayEquals(new int[]{0, 0, 7}, resumed.getSamples());
+        }
+        Files.delete(file);
+    }
+
+    @Test
+    void testInvalidSnapshotRejected() throws Exception {
+        var file = Files.write(tempDir.resolve("garbage"), new byte[64]);
+        assertThrows(IllegalArgumentException.class, () -> OffHeapIntShiftBuffer.loadSnapshot(file));
+    }
+
+    @Test
+    void testStatisticsAvailableOnReloadedWindow() {
+        var buffer = OffHeapIntShiftBuffer.allocateDirect(4);
+        for (int i = 1; i <= 4; i++) {
+            buffer.add(i * 10);
+        }
+        var snapshot = tempDir.resolve("stats.snapshot");
+        buffer.snapshotTo(snapshot);
+
+        var statistics = new SlidingWindowStatisticsImpl(new SimpleEventBus(), OffHeapIntShiftBuffer.loadSnapshot(snapshot));
+        var stats = statistics.getLatestStatistics();
+        assertNotNull(stats);
+        assertEquals(25.0, stats.getMean());
+        assertEquals(40, stats.getMax());
+    }
+}
@@ -1,15 +1,23 @@
 package michelerossi.statistics;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.IntStream;
 
 import michelerossi.eventbus.SimpleEventBus;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 /** Tests for {@link SlidingWindowStatisticsImpl} */
 class TestSlidingWindowStatistics {
@@ -37,6 +45,26 @@ class TestSlidingWindowStatistics {
         assertEquals(1, stats.getLatestStatistics().getPctile(95));
     }
 
+    @Test
+    void testBucketCounts() {
+        var stats = new SlidingWindowStatisticsImpl(new SimpleEventBus(), 6);
+        int[] bounds = {10, 100};
+        for (int sample : new int[]{150, 5, 50, 99, 100, 7}) {
+            assertNull(stats.getBucketCounts(bounds));
+            stats.add(sample);
+        }
+        assertArrayEquals(new int[]{2, 2, 2}, stats.getBucketCounts(bounds));
+        // 150 is evicted
+        stats.add(1000);
+        assertArrayEquals(new int[]{2, 2, 2}, stats.getBucketCounts(bounds));
+
+        // the published statistics sort their samples only when needed, the mean, min and max come straight from the window
+        var latestStats = stats.getLatestStatistics();
+        assertEquals(1000, latestStats.getMax());
+        assertEquals(5, latestStats.getMin());
+        assertEquals(50, latestStats.getPctile(50));
+    }
+
     @Test
     void testStats2() {
         var eventBus = new SimpleEventBus();
@@ -70,4 +98,112 @@ class TestSlidingWindowStatistics {
         assertEquals(1, statsRef.get().getMin());
         assertEquals(3, statsRef.get().getMax());
     }
+
+    @Test
+    void testLazyStatsMemoizedUntilWindowChanges() {
+        var eventBus = new SimpleEventBus();
+        var stats = new SlidingWindowStatisticsImpl(eventBus, 3, 1, TimeUnit.HOURS, 0);
+        stats.add(1);
+        stats.add(2);
+        assertNull(stats.getLatestStatistics());
+
+        stats.add(3);
+        var latestStats = stats.getLatestStatistics();
+        assertNotNull(latestStats);
+        assertSame(latestStats, stats.getLatestStatistics());
+
+        stats.add(4);
+        assertNotSame(latestStats, stats.getLatestStatistics());
+        assertEquals(3.0, stats.getLatestStatistics().getMean(), 0.00001);
+    }
+
+    @Test
+    void testLazyStatsRateLimited() {
+        var eventBus = new SimpleEventBus();
+        var numPublished = new AtomicInteger();
+        var stats = new SlidingWindowStatisticsImpl(eventBus, 3, 1, TimeUnit.HOURS, 0);
+        stats.subscribeForStatistics(s -> numPublished.incrementAndGet());
+
+        IntStream.range(0, 100).forEach(stats::add);
+
+        // only the first full window is published within the interval, the latest values remain available on demand
+        assertEquals(1, numPublished.get());
+        assertEquals(98, stats.getLatestStatistics().getMean(), 0.00001);
+    }
+
+    @Test
+    void testLazyStatsRateLimitedChangePublishedWhenIntervalExpires() throws InterruptedException {
+        var eventBus = new SimpleEventBus();
+        var statsRef = new AtomicReference<SlidingWindowStatistics.Statistics>();
+        var numPublished = new AtomicInteger();
+        var stats = new SlidingWindowStatisticsImpl(eventBus, 2, 100, TimeUnit.MILLISECONDS, 0);
+        stats.subscribeForStatistics(s -> {
+            statsRef.set(s);
+            numPublished.incrementAndGet();
+        });
+
+        stats.fillBuffer(10);
+        stats.add(30);
+        assertEquals(1, numPublished.get());
+        assertEquals(10.0, statsRef.get().getMean(), 0.00001);
+
+        // no more samples: the change held back by the rate limit is published once the interval expires
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (numPublished.get() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, numPublished.get());
+        assertEquals(20.0, statsRef.get().getMean(), 0.00001);
+        Thread.sleep(250);
+        assertEquals(2, numPublished.get());
+    }
+
+    @Test
+    void testLazyStatsChangeThreshold() {
+        var eventBus = new SimpleEventBus();
+        var statsRef = new AtomicReference<SlidingWindowStatistics.Statistics>();
+        var numPublished = new AtomicInteger();
+        var stats = new SlidingWindowStatisticsImpl(eventBus, 4, 0, TimeUnit.MILLISECONDS, 10.0);
+        stats.subscribeForStatistics(s -> {
+            statsRef.set(s);
+            numPublished.incrementAndGet();
+        });
+
+        stats.fillBuffer(100);
+        assertEquals(1, numPublished.get());
+
+        stats.add(110);
+        stats.add(90);
+        assertEquals(1, numPublished.get());
+
+        stats.add(160);
+        assertEquals(2, numPublished.get());
+        assertEquals(115.0, statsRef.get().getMean(), 0.00001);
+    }
+
+    @Test
+    void testPooledStatsRecycledAfterDelivery() {
+        var eventBus = new SimpleEventBus();
+        var publishedMeans = new ArrayList<Double>();
+        var publishedStats = new HashSet<SlidingWindowStatistics.Statistics>();
+        var stats = new SlidingWindowStatisticsImpl(eventBus, 3, 2);
+        stats.subscribeForStatistics(s -> {
+            publishedMeans.add(s.getMean());
+            publishedStats.add(s);
+        });
+
+        IntStream.rangeClosed(1, 6).forEach(stats::add);
+        assertEquals(List.of(2.0, 3.0, 4.0, 5.0), publishedMeans);
+        // one instance held as the latest statistics, the other one recycled for each publication
+        assertEquals(2, publishedStats.size());
+
+        var latestStats = stats.getLatestStatistics();
+        assertEquals(5.0, latestStats.getMean(), 0.00001);
+        assertEquals(6, latestStats.getMax());
+        stats.add(100);
+        stats.add(100);
+        // the latest statistics are a copy, not affected by the recycling
+        assertEquals(5.0, latestStats.getMean(), 0.00001);
+        assertEquals(100, stats.getLatestStatistics().getMode());
+    }
 }
@@ -0,0 +1,90 @@
+package michelerossi.statistics;
+
+import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import michelerossi.eventbus.SimpleEventBus;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/** Tests for {@link StripedSlidingWindowStatistics} */
+class TestStripedSlidingWindowStatistics {
+
+    @Test
+    void testKeepsMostRecentSamples() {
+        var eventBus = new SimpleEventBus();
+        var statsRef = new AtomicReference<SlidingWindowStatistics.Statistics>();
+        // publications triggered by adding samples are held back for the duration of the test
+        var stats = new StripedSlidingWindowStatistics(eventBus, 100, 4, 1, TimeUnit.HOURS);
+        stats.subscribeForStatistics(statsRef::set);
+
+        IntStream.rangeClosed(1, 99).forEach(stats::add);
+        assertNull(stats.getLatestStatistics());
+        assertNull(stats.publishStatistics());
+
+        IntStream.rangeClosed(100, 2000).forEach(stats::add);
+        var published = stats.publishStatistics();
+        assertSame(published, statsRef.get());
+        assertEquals(1901, published.getMin());
+        assertEquals(2000, published.getMax());
+        assertEquals(1950.5, published.getMean(), 0.00001);
+    }
+
+    @Test
+    void testConcurrentWriters() throws InterruptedException {
+        var numThreads = 8;
+        var numSamples = 1000;
+        var stats = new StripedSlidingWindowStatistics(new SimpleEventBus(), numSamples, 4);
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < numThreads; t++) {
+            var thread = new Thread(() -> IntStream.range(0, 50_000).forEach(i -> stats.add(i % 10)), "StripedWriter-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        var latestStats = stats.getLatestStatistics();
+        assertEquals(0, latestStats.getMin());
+        assertEquals(9, latestStats.getMax());
+        assertEquals(4.5, latestStats.getMean(), 0.5);
+    }
+
+    @Test
+    void testAddPublishesAtLimitedRate() throws InterruptedException {
+        var eventBus = new SimpleEventBus();
+        var published = new CopyOnWriteArrayList<SlidingWindowStatistics.Statistics>();
+        var stats = new StripedSlidingWindowStatistics(eventBus, 10, 2, 100, TimeUnit.MILLISECONDS);
+        stats.subscribeForStatistics(published::add);
+
+        stats.fillBuffer(5);
+        assertEquals(1, published.size());
+        assertEquals(5.0, published.get(0).getMean(), 0.00001);
+
+        // held back by the rate limit, then published when the interval expires without further samples
+        IntStream.range(0, 10).forEach(i -> stats.add(15));
+        assertEquals(1, published.size());
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (published.size() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, published.size());
+        assertEquals(15.0, published.get(1).getMean(), 0.00001);
+    }
+
+    @Test
+    void testFillBuffer() {
+        var stats = new StripedSlidingWindowStatistics(new SimpleEventBus(), 10);
+        stats.fillBuffer(42);
+        assertEquals(42, stats.getLatestStatistics().getMode());
+        stats.add(1);
+        assertEquals(1, stats.getLatestStatistics().getMin());
+    }
+}
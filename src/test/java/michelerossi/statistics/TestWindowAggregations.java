@@ -0,0 +1,70 @@
+package michelerossi.statistics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link WindowAggregations}, run with the kernels the JVM provides: the scalar ones by default, and with the
+ * vector profile both the Vector API ones and, in a second run without the incubator module, the scalar fallback.
+ */
+class TestWindowAggregations {
+
+    @Test
+    void testAggregationsMatchPlainComputation() {
+        var random = new Random(42);
+        int[] bounds = {-1000, 0, 10, 500, 100_000};
+        // lengths which are not a multiple of the vector length exercise the scalar tails
+        for (int length : new int[]{0, 1, 3, 7, 8, 17, 64, 1001, 10_007}) {
+            var samples = random.ints(length, -200_000, 200_000).toArray();
+            assertEquals(Arrays.stream(samples).asLongStream().sum(), WindowAggregations.sum(samples), "sum of " + length);
+            assertEquals(Arrays.stream(samples).min().orElse(Integer.MAX_VALUE), WindowAggregations.min(samples), "min of " + length);
+            assertEquals(Arrays.stream(samples).max().orElse(Integer.MIN_VALUE), WindowAggregations.max(samples), "max of " + length);
+            var counts = new int[bounds.length + 1];
+            for (int sample : samples) {
+                var bucket = 0;
+                while (bucket < bounds.length && sample >= bounds[bucket]) {
+                    bucket++;
+                }
+                counts[bucket]++;
+            }
+            assertArrayEquals(counts, WindowAggregations.bucketCounts(samples, bounds), "counts of " + length);
+        }
+    }
+
+    @Test
+    void testSumDoesNotOverflow() {
+        var samples = new int[1000];
+        Arrays.fill(samples, Integer.MAX_VALUE);
+        assertEquals(1000L * Integer.MAX_VALUE, WindowAggregations.sum(samples));
+    }
+
+    @Test
+    void testVectorizedOnlyWhenExpected() {
+        // set by the vector profile when the tests run with --add-modules jdk.incubator.vector
+        assertEquals(Boolean.getBoolean("window.aggregations.vectorized"), WindowAggregations.isVectorized());
+    }
+
+    @Test
+    void testBucketCounts() {
+        int[] samples = {5, 1, 10, 15, 20, 0, 9, 25, -3};
+        assertArrayEquals(new int[]{3, 2, 2, 2}, WindowAggregations.bucketCounts(samples, new int[]{2, 10, 20}));
+        assertArrayEquals(new int[]{9}, WindowAggregations.bucketCounts(samples, new int[0]));
+        assertThrows(IllegalArgumentException.class, () -> WindowAggregations.bucketCounts(samples, new int[]{10, 10}));
+    }
+
+    @Test
+    void testStatisticsOfWindow() {
+        var stats = SlidingWindowStatisticsImpl.calculateStats(new int[]{7, 3, 9, 3, 7, 1});
+        assertEquals(5.0, stats.getMean());
+        assertEquals(1, stats.getMin());
+        assertEquals(9, stats.getMax());
+        // ties are resolved in favour of the lowest value
+        assertEquals(3, stats.getMode());
+    }
+}
@@ -0,0 +1,101 @@
+package michelerossi.throttling;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import michelerossi.eventbus.SimpleEventBus;
+import michelerossi.statistics.SlidingWindowStatisticsImpl;
+import org.junit.jupiter.api.Test;
+
+import static michelerossi.throttling.Throttler.ThrottleResult.DO_NOT_PROCEED;
+import static michelerossi.throttling.Throttler.ThrottleResult.PROCEED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests for {@link AdaptiveConcurrencyThrottler} */
+class AdaptiveConcurrencyThrottlerTest {
+
+    private static void runCalls(AdaptiveConcurrencyThrottler throttler, int numRounds, long latencyMs) {
+        for (int round = 0; round < numRounds; round++) {
+            var numAdmitted = 0;
+            while (throttler.shouldProceed() == PROCEED) {
+                numAdmitted++;
+            }
+            for (int i = 0; i < numAdmitted; i++) {
+                throttler.release(latencyMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Test
+    void testSlotsAndNotifications() {
+        var statistics = new SlidingWindowStatisticsImpl(new SimpleEventBus(), 10);
+        var throttler = new AdaptiveConcurrencyThrottler(new SimpleEventBus(), statistics, 2, 1, 10, 2.0);
+        List<Throttler.ThrottleResult> notifications = new ArrayList<>();
+        throttler.notifyWhenCanProceed(notifications::add);
+
+        assertEquals(PROCEED, throttler.shouldProceed());
+        assertEquals(PROCEED, throttler.shouldProceed());
+        assertEquals(DO_NOT_PROCEED, throttler.shouldProceed());
+        assertEquals(2, throttler.getInFlight());
+
+        throttler.release(1, TimeUnit.MILLISECONDS);
+        assertEquals(List.of(DO_NOT_PROCEED, PROCEED), notifications);
+        assertEquals(1, throttler.getInFlight());
+    }
+
+    @Test
+    void testLimitFollowsLatency() {
+        var statistics = new SlidingWindowStatisticsImpl(new SimpleEventBus(), 10);
+        var throttler = new AdaptiveConcurrencyThrottler(new SimpleEventBus(), statistics, 10, 2, 200, 2.0);
+
+        runCalls(throttler, 50, 5);
+        var grownLimit = throttler.getLimit();
+        assertTrue(grownLimit > 10, "limit should grow while latency is stable, was " + grownLimit);
+
+        runCalls(throttler, 3, 100);
+        var reducedLimit = throttler.getLimit();
+        assertTrue(reducedLimit < grownLimit, "limit should shrink when latency degrades, was " + reducedLimit);
+        assertTrue(reducedLimit >= 2);
+    }
+
+    @Test
+    void testAcquireGrantsReleasedSlotsInOrder() {
+        var statistics = new SlidingWindowStatisticsImpl(new SimpleEventBus(), 10);
+        var throttler = new AdaptiveConcurrencyThrottler(new SimpleEventBus(), statistics, 1, 1, 1, 2.0);
+
+        var first = throttler.acquire();
+        var second = throttler.acquire();
+        var third = throttler.acquire();
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        assertFalse(third.isDone());
+
+        // each release wakes up exactly one waiter, the oldest
+        throttler.release(1, TimeUnit.MILLISECONDS);
+        assertTrue(second.isDone());
+        assertFalse(third.isDone());
+        assertEquals(1, throttler.getInFlight());
+
+        throttler.release(1, TimeUnit.MILLISECONDS);
+        assertTrue(third.isDone());
+        assertEquals(1, throttler.getInFlight());
+    }
+
+    @Test
+    void testTryAcquireTimesOut() throws Exception {
+        var statistics = new SlidingWindowStatisticsImpl(new SimpleEventBus(), 10);
+        var throttler = new AdaptiveConcurrencyThrottler(new SimpleEventBus(), statistics, 1, 1, 1, 2.0);
+
+        assertTrue(throttler.tryAcquire(Duration.ZERO).get());
+        assertFalse(throttler.tryAcquire(Duration.ZERO).get());
+        assertFalse(throttler.tryAcquire(Duration.ofMillis(50)).get(1, TimeUnit.SECONDS));
+
+        // the timed out waiter does not keep the slot released afterwards
+        throttler.release(1, TimeUnit.MILLISECONDS);
+        assertEquals(0, throttler.getInFlight());
+    }
+}
@@ -0,0 +1,123 @@
+package michelerossi.throttling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import michelerossi.eventbus.SimpleEventBus;
+import org.junit.jupiter.api.Test;
+
+import static michelerossi.throttling.Throttler.ThrottleResult.DO_NOT_PROCEED;
+import static michelerossi.throttling.Throttler.ThrottleResult.PROCEED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests for {@link GcraThrottler} */
+class GcraThrottlerTest {
+
+    @Test
+    void testBurstThenSteadyRate() {
+        var clock = new AtomicLong(1_000_000L);
+        // 10 hits per second, i.e. one every 100ms, bursts of 3
+        var throttler = new GcraThrottler(new SimpleEventBus(), 10, 1, TimeUnit.SECONDS, 3, clock::get);
+
+        assertEquals(PROCEED, throttler.shouldProceed());
+        assertEquals(PROCEED, throttler.shouldProceed());
+        assertEquals(PROCEED, throttler.shouldProceed());
+        assertEquals(DO_NOT_PROCEED, throttler.shouldProceed());
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(99));
+        assertEquals(DO_NOT_PROCEED, throttler.shouldProceed());
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(PROCEED, throttler.shouldProceed());
+        assertEquals(DO_NOT_PROCEED, throttler.shouldProceed());
+
+        // a long pause restores the full burst but not more
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        var numAdmitted = 0;
+        for (int i = 0; i < 10; i++) {
+            numAdmitted += throttler.shouldProceed() == PROCEED ? 1 : 0;
+        }
+        assertEquals(3, numAdmitted);
+    }
+
+    @Test
+    void testNotificationsOnlyOnStatusChange() {
+        var clock = new AtomicLong(-5_000L);
+        var eventBus = new SimpleEventBus();
+        var throttler = new GcraThrottler(eventBus, 1, 1, TimeUnit.MILLISECONDS, 1, clock::get);
+        List<Throttler.ThrottleResult> notifications = new CopyOnWriteArrayList<>();
+        throttler.notifyWhenCanProceed(notifications::add);
+
+        throttler.shouldProceed();
+        throttler.shouldProceed();
+        throttler.shouldProceed();
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        throttler.shouldProceed();
+        throttler.shouldProceed();
+
+        assertEquals(List.of(DO_NOT_PROCEED, PROCEED, DO_NOT_PROCEED), notifications);
+    }
+
+    @Test
+    void testProceedNotifiedWithoutPolling() throws InterruptedException {
+        // one permit every 100ms, no burst
+        var throttler = new GcraThrottler(new SimpleEventBus(), 10, 1, TimeUnit.SECONDS, 1);
+        List<Throttler.ThrottleResult> notifications = new CopyOnWriteArrayList<>();
+        throttler.notifyWhenCanProceed(notifications::add);
+
+        var start = System.nanoTime();
+        assertEquals(PROCEED, throttler.shouldProceed());
+        assertEquals(DO_NOT_PROCEED, throttler.shouldProceed());
+        var deadline = start + TimeUnit.SECONDS.toNanos(5);
+        while (notifications.size() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        var elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(List.of(DO_NOT_PROCEED, PROCEED), notifications);
+        assertTrue(elapsedMs >= 90, "the next permit is conforming after 100ms, notified after " + elapsedMs);
+        assertEquals(PROCEED, throttler.shouldProceed());
+    }
+
+    @Test
+    void testConcurrentAdmissionsNeverExceedBurst() throws InterruptedException {
+        var throttler = new GcraThrottler(new SimpleEventBus(), 1, 1, TimeUnit.HOURS, 100);
+        var admitted = new AtomicLong();
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            var thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    if (throttler.shouldProceed() == PROCEED) {
+                        admitted.incrementAndGet();
+                    }
+                }
+            }, "GcraWorker-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+        assertEquals(100, admitted.get());
+    }
+
+    @Test
+    void testAcquireWaitsForConformingPermits() throws Exception {
+        // one permit every 20ms, no burst
+        var throttler = new GcraThrottler(new SimpleEventBus(), 50, 1, TimeUnit.SECONDS, 1);
+        var start = System.nanoTime();
+        var futures = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(throttler.acquire());
+        }
+        for (var future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        var elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMs >= 90, "6 permits at 50 per second should take about 100ms, took " + elapsedMs);
+        assertEquals(DO_NOT_PROCEED, throttler.shouldProceed());
+    }
+}
@@ -0,0 +1,67 @@
+package michelerossi.throttling;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static michelerossi.throttling.Throttler.ThrottleResult.DO_NOT_PROCEED;
+import static michelerossi.throttling.Throttler.ThrottleResult.PROCEED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests for {@link KeyedThrottler} */
+class KeyedThrottlerTest {
+
+    @Test
+    void testKeysThrottledIndependently() {
+        var clock = new AtomicLong();
+        var throttler = new KeyedThrottler<String>(1, 1, TimeUnit.SECONDS, 2, 1000, clock::get);
+
+        assertEquals(PROCEED, throttler.shouldProceed("10.0.0.1"));
+        assertEquals(PROCEED, throttler.shouldProceed("10.0.0.1"));
+        assertEquals(DO_NOT_PROCEED, throttler.shouldProceed("10.0.0.1"));
+        assertEquals(PROCEED, throttler.shouldProceed("10.0.0.2"));
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(PROCEED, throttler.shouldProceed("10.0.0.1"));
+        assertEquals(DO_NOT_PROCEED, throttler.shouldProceed("10.0.0.1"));
+        assertEquals(2, throttler.size());
+    }
+
+    @Test
+    void testEvictIdleKeepsDecisions() {
+        var clock = new AtomicLong();
+        var throttler = new KeyedThrottler<Integer>(1, 1, TimeUnit.SECONDS, 1, 1_000_000, clock::get);
+        for (int key = 0; key < 100_000; key++) {
+            assertEquals(PROCEED, throttler.shouldProceed(key));
+        }
+        assertEquals(100_000, throttler.size());
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(0, throttler.evictIdle());
+        for (int key = 0; key < 100_000; key += 1000) {
+            assertEquals(DO_NOT_PROCEED, throttler.shouldProceed(key));
+        }
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(100_000, throttler.evictIdle());
+        assertEquals(0, throttler.size());
+        assertEquals(PROCEED, throttler.shouldProceed(42));
+        assertEquals(DO_NOT_PROCEED, throttler.shouldProceed(42));
+    }
+
+    @Test
+    void testMaxKeysBound() {
+        var clock = new AtomicLong();
+        var throttler = new KeyedThrottler<Integer>(1, 1, TimeUnit.HOURS, 1, 1000, clock::get);
+        for (int key = 0; key < 50_000; key++) {
+            clock.incrementAndGet();
+            assertEquals(PROCEED, throttler.shouldProceed(key));
+        }
+        assertTrue(throttler.size() <= 1000 + Runtime.getRuntime().availableProcessors() * 4);
+
+        // the most recent keys are still throttled
+        assertEquals(DO_NOT_PROCEED, throttler.shouldProceed(49_999));
+    }
+}
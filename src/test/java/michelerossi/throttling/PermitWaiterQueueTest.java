@@ -0,0 +1,56 @@
+package michelerossi.throttling;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests for {@link PermitWaiterQueue} */
+class PermitWaiterQueueTest {
+
+    @Test
+    void testTimedOutAndCancelledWaitersRemoved() throws Exception {
+        var permits = new AtomicInteger();
+        var waiters = new PermitWaiterQueue(() -> permits.getAndUpdate(p -> Math.max(0, p - 1)) > 0, permits::incrementAndGet, null);
+
+        var timingOut = waiters.tryAcquire(Duration.ofMillis(20));
+        var cancelled = waiters.acquire();
+        var waiting = waiters.acquire();
+        assertEquals(3, waiters.size());
+
+        // removed when their future completes, without waiting for a permit to be released
+        assertFalse(timingOut.get(1, TimeUnit.SECONDS));
+        assertEquals(2, waiters.size());
+        cancelled.cancel(false);
+        assertEquals(1, waiters.size());
+
+        permits.set(1);
+        waiters.release();
+        assertTrue(waiting.isDone());
+        assertEquals(0, waiters.size());
+        assertEquals(0, permits.get());
+    }
+
+    @Test
+    void testPermitGivenBackWithItsId() {
+        var nextPermit = new AtomicLong(PermitWaiterQueue.NO_PERMIT);
+        var returnedPermits = new CopyOnWriteArrayList<Long>();
+        var waiters = new PermitWaiterQueue(() -> nextPermit.getAndSet(PermitWaiterQueue.NO_PERMIT), returnedPermits::add, null);
+
+        var waiting = waiters.tryAcquire(Duration.ofHours(1));
+        // completed by its caller, the waiter is still queued when the permit is taken for it
+        waiting.complete(Boolean.TRUE);
+        nextPermit.set(42);
+        waiters.release();
+        assertEquals(List.of(42L), returnedPermits);
+        assertEquals(0, waiters.size());
+    }
+}
@@ -0,0 +1,105 @@
+package michelerossi.throttling;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import michelerossi.eventbus.SimpleEventBus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static michelerossi.throttling.Throttler.ThrottleResult.DO_NOT_PROCEED;
+import static michelerossi.throttling.Throttler.ThrottleResult.PROCEED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests for {@link SharedMemoryThrottler}, each instance standing for a different process */
+class SharedMemoryThrottlerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testLimitSharedThroughFile() {
+        var file = tempDir.resolve("quota");
+        var process1 = new SharedMemoryThrottler(file, new SimpleEventBus(), 10, 100, TimeUnit.SECONDS, 10);
+        var process2 = new SharedMemoryThrottler(file, new SimpleEventBus(), 10, 100, TimeUnit.SECONDS, 10);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(PROCEED, process1.shouldProceed());
+            assertEquals(PROCEED, process2.shouldProceed());
+        }
+        assertEquals(DO_NOT_PROCEED, process1.shouldProceed());
+        assertEquals(DO_NOT_PROCEED, process2.shouldProceed());
+
+        // a process started later sees the hits of the others
+        var process3 = new SharedMemoryThrottler(file, new SimpleEventBus(), 10, 100, TimeUnit.SECONDS, 10);
+        assertEquals(DO_NOT_PROCEED, process3.shouldProceed());
+    }
+
+    @Test
+    void testIncompatibleConfiguration() {
+        var file = tempDir.resolve("quota");
+        new SharedMemoryThrottler(file, new SimpleEventBus(), 10, 100, TimeUnit.SECONDS, 10);
+        assertThrows(IllegalArgumentException.class, () -> new SharedMemoryThrottler(file, new SimpleEventBus(), 20, 100, TimeUnit.SECONDS, 10));
+    }
+
+    @Test
+    void testStopUnmapsFile() throws Exception {
+        var file = tempDir.resolve("quota");
+        var process1 = new SharedMemoryThrottler(file, new SimpleEventBus(), 1, 100, TimeUnit.SECONDS, 10);
+        var process2 = new SharedMemoryThrottler(file, new SimpleEventBus(), 1, 100, TimeUnit.SECONDS, 10);
+        assertEquals(PROCEED, process1.shouldProceed());
+        var waiting = process1.tryAcquire(Duration.ofHours(1));
+
+        process1.stop();
+        process1.stop();
+        assertThrows(IllegalStateException.class, process1::shouldProceed);
+        assertThrows(CancellationException.class, waiting::join);
+        // the hits counted by a stopped process are kept for the others
+        assertEquals(DO_NOT_PROCEED, process2.shouldProceed());
+        process2.stop();
+
+        // no mapping left, the file can be deleted and recreated
+        var processMappings = Path.of("/proc/self/maps");
+        if (Files.exists(processMappings)) {
+            assertFalse(Files.readString(processMappings).contains(file.toString()));
+        }
+        Files.delete(file);
+        var process3 = new SharedMemoryThrottler(file, new SimpleEventBus(), 1, 100, TimeUnit.SECONDS, 10);
+        assertEquals(PROCEED, process3.shouldProceed());
+        process3.stop();
+    }
+
+    @Test
+    void testConcurrentProcessesNeverExceedLimit() throws InterruptedException {
+        var file = tempDir.resolve("quota");
+        var admitted = new AtomicInteger();
+        var threads = new ArrayList<Thread>();
+        for (int p = 0; p < 4; p++) {
+            var throttler = new SharedMemoryThrottler(file, new SimpleEventBus(), 1000, 1, TimeUnit.HOURS, 60);
+            for (int t = 0; t < 2; t++) {
+                var thread = new Thread(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        if (throttler.shouldProceed() == PROCEED) {
+                            admitted.incrementAndGet();
+                        }
+                    }
+                }, "SharedMemoryWorker-" + p + "-" + t);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+        assertEquals(1000, admitted.get(), 50);
+        assertTrue(admitted.get() <= 1000);
+    }
+}
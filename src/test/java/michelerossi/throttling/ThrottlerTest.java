@@ -0,0 +1,57 @@
+package michelerossi.throttling;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import static michelerossi.throttling.Throttler.ThrottleResult.DO_NOT_PROCEED;
+import static michelerossi.throttling.Throttler.ThrottleResult.PROCEED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests for the default methods of {@link Throttler} */
+class ThrottlerTest {
+
+    /** Admits the calls while permits are left, without implementing the asynchronous acquisition */
+    private static class PermitsThrottler implements Throttler {
+        private final AtomicInteger permits = new AtomicInteger();
+
+        @Override
+        public ThrottleResult shouldProceed() {
+            return permits.getAndUpdate(p -> Math.max(0, p - 1)) > 0 ? PROCEED : DO_NOT_PROCEED;
+        }
+
+        @Override
+        public void notifyWhenCanProceed(Consumer<ThrottleResult> throttleResultConsumer) {
+        }
+    }
+
+    @Test
+    void testDefaultAcquire() throws Exception {
+        var throttler = new PermitsThrottler();
+        throttler.permits.set(1);
+        assertTrue(throttler.acquire().isDone());
+
+        var waiting = throttler.acquire();
+        assertFalse(waiting.isDone());
+        throttler.permits.set(1);
+        waiting.get(1, TimeUnit.SECONDS);
+        assertEquals(0, throttler.permits.get());
+    }
+
+    @Test
+    void testDefaultTryAcquire() throws Exception {
+        var throttler = new PermitsThrottler();
+        assertFalse(throttler.tryAcquire(Duration.ZERO).get());
+        assertFalse(throttler.tryAcquire(Duration.ofMillis(20)).get(1, TimeUnit.SECONDS));
+
+        var waiting = throttler.tryAcquire(Duration.ofSeconds(5));
+        throttler.permits.set(1);
+        assertTrue(waiting.get(1, TimeUnit.SECONDS));
+        assertEquals(0, throttler.permits.get());
+    }
+}
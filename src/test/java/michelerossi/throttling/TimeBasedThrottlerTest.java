@@ -1,16 +1,30 @@
 package michelerossi.throttling;
 
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
 import lombok.extern.slf4j.Slf4j;
 
 import michelerossi.Stoppable;
 import michelerossi.eventbus.ConcurrentEventBus;
 import michelerossi.eventbus.SimpleEventBus;
+import michelerossi.scheduling.HashedTimingWheel;
+import michelerossi.statistics.DecayingSlidingWindowStatistics;
+import michelerossi.statistics.OffHeapIntShiftBuffer;
+import michelerossi.statistics.SlidingWindowStatisticsImpl;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -115,6 +129,276 @@ class TimeBasedThrottlerTest {
         throttler.stop();
     }
 
+    @Test
+    void testTimeBasedThrottlerOnTimingWheel() {
+        var timingWheel = new HashedTimingWheel("throttlers", 10, TimeUnit.MILLISECONDS, 512);
+        var throttlers = new ArrayList<TimeBasedThrottler>();
+        for (int i = 0; i < 100; i++) {
+            // statistics are delivered through the bus, each throttler needs its own
+            throttlers.add(new TimeBasedThrottler(timingWheel, new SimpleEventBus(), 1, 5, 1000, TimeUnit.MILLISECONDS, false));
+        }
+        var throttler = throttlers.get(0);
+        assertEquals(Throttler.ThrottleResult.DO_NOT_PROCEED, throttler.shouldProceed());
+
+        long end = System.currentTimeMillis() + 5_000;
+        int numActionsPerformed = 0;
+        while (System.currentTimeMillis() < end) {
+            if (throttler.shouldProceed() == Throttler.ThrottleResult.PROCEED) {
+                numActionsPerformed++;
+                throttler.hit();
+            }
+            sleep(5);
+        }
+
+        assertEquals(5, numActionsPerformed, 5);
+        throttlers.forEach(TimeBasedThrottler::stop);
+        timingWheel.stop();
+    }
+
+    @Test
+    void testStripedHitCounting() throws InterruptedException {
+        var eventBus = new SimpleEventBus();
+        int maxHitsPerInterval = 1000;
+        var samplingExecutor = new ManualSamplingExecutor();
+        var throttler = new TimeBasedThrottler(
+            samplingExecutor,
+            eventBus,
+            maxHitsPerInterval,
+            1,
+            1,
+            TimeUnit.HOURS,
+            true);
+        // a sample without hits lifts the initial throttling, no other sample is taken during the test
+        samplingExecutor.runSampling();
+        assertEquals(Throttler.ThrottleResult.PROCEED, throttler.shouldProceed());
+
+        List<Throttler.ThrottleResult> notifications = new CopyOnWriteArrayList<>();
+        throttler.notifyWhenCanProceed(notifications::add);
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            var thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    throttler.hit();
+                }
+            }, "StripedHitThread-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(Throttler.ThrottleResult.DO_NOT_PROCEED, throttler.shouldProceed());
+        assertEquals(List.of(Throttler.ThrottleResult.DO_NOT_PROCEED), notifications);
+        throttler.stop();
+        samplingExecutor.shutdownNow();
+    }
+
+    @Test
+    void testStripedHitCountingDetectsExactLimit() {
+        var eventBus = new SimpleEventBus();
+        int maxHitsPerInterval = 1000;
+        var statistics = new SlidingWindowStatisticsImpl(eventBus, 1);
+        statistics.add(0);
+        var throttler = new TimeBasedThrottler(
+            executorService,
+            eventBus,
+            maxHitsPerInterval,
+            statistics,
+            1,
+            TimeUnit.HOURS,
+            true);
+
+        // the sum is only read after a countdown of hits, which must still stop exactly at the limit
+        for (int i = 1; i < maxHitsPerInterval; i++) {
+            throttler.hit();
+            assertEquals(Throttler.ThrottleResult.PROCEED, throttler.shouldProceed(), "after hit " + i);
+        }
+        throttler.hit();
+        assertEquals(Throttler.ThrottleResult.DO_NOT_PROCEED, throttler.shouldProceed());
+        throttler.stop();
+    }
+
+    @Test
+    void testStripedHitCountdownRestartedWithEveryInterval() throws Exception {
+        var eventBus = new SimpleEventBus();
+        int maxHitsPerInterval = 640;
+        var samplingExecutor = new ManualSamplingExecutor();
+        var throttler = new TimeBasedThrottler(
+            samplingExecutor,
+            eventBus,
+            maxHitsPerInterval,
+            1,
+            1,
+            TimeUnit.HOURS,
+            true);
+        samplingExecutor.runSampling();
+        var workers = new ArrayList<ExecutorService>();
+        for (int i = 0; i < 100; i++) {
+            workers.add(Executors.newSingleThreadExecutor());
+        }
+        try {
+            // each thread sums the counters once, setting a countdown of about 1/64 of the limit
+            for (var worker : workers) {
+                worker.submit(throttler::hit).get();
+            }
+            samplingExecutor.runSampling();
+            assertEquals(Throttler.ThrottleResult.PROCEED, throttler.shouldProceed());
+
+            // 700 hits in the new interval, fewer per thread than the countdowns set in the previous one
+            for (var worker : workers) {
+                worker.submit(() -> {
+                    for (int i = 0; i < 7; i++) {
+                        throttler.hit();
+                    }
+                }).get();
+            }
+            assertEquals(Throttler.ThrottleResult.DO_NOT_PROCEED, throttler.shouldProceed());
+        } finally {
+            workers.forEach(ExecutorService::shutdownNow);
+            throttler.stop();
+            samplingExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testStripedWaitersGrantedOnlyUpToLimit() throws Exception {
+        var eventBus = new SimpleEventBus();
+        int maxHitsPerInterval = 1000;
+        var samplingExecutor = new ManualSamplingExecutor();
+        var throttler = new TimeBasedThrottler(
+            samplingExecutor,
+            eventBus,
+            maxHitsPerInterval,
+            1,
+            1,
+            TimeUnit.HOURS,
+            true);
+        samplingExecutor.runSampling();
+        // this thread sets its countdown on its first hit, then another thread brings the hits close to the limit
+        throttler.hit();
+        var otherThread = new Thread(() -> {
+            for (int i = 0; i < 990; i++) {
+                throttler.hit();
+            }
+        });
+        otherThread.start();
+        otherThread.join();
+
+        var permits = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < 20; i++) {
+            permits.add(throttler.acquire());
+        }
+        assertEquals(9, permits.stream().filter(CompletableFuture::isDone).count());
+        assertEquals(Throttler.ThrottleResult.DO_NOT_PROCEED, throttler.shouldProceed());
+        throttler.stop();
+        samplingExecutor.shutdownNow();
+    }
+
+    @Test
+    void testStatusChangesRecordedByFlightRecorder() throws Exception {
+        var throttler = new TimeBasedThrottler(executorService, new SimpleEventBus(), 3, 5, 1, TimeUnit.HOURS);
+        var recordingFile = Files.createTempFile("throttling", ".jfr");
+        try (var recording = new Recording()) {
+            recording.enable("michelerossi.throttling.ThrottleStatusChange");
+            recording.start();
+            throttler.hit();
+            throttler.hit();
+            throttler.hit();
+            recording.stop();
+            recording.dump(recordingFile);
+
+            var newStatuses = RecordingFile.readAllEvents(recordingFile).stream()
+                .filter(event -> event.getEventType().getName().equals("michelerossi.throttling.ThrottleStatusChange"))
+                .sorted((e1, e2) -> e1.getStartTime().compareTo(e2.getStartTime()))
+                .map(event -> event.getString("newStatus"))
+                .toList();
+            assertEquals(List.of("PROCEED", "DO_NOT_PROCEED"), newStatuses);
+        } finally {
+            throttler.stop();
+            Files.deleteIfExists(recordingFile);
+        }
+    }
+
+    @Test
+    void testThrottleStatusResumedFromMappedWindow() throws Exception {
+        var windowFile = Files.createTempFile("throttling", ".window");
+        Files.delete(windowFile);
+        try {
+            try (var window = OffHeapIntShiftBuffer.mapFile(windowFile, 5)) {
+                for (int i = 0; i < 5; i++) {
+                    window.add(i < 2 ? 1 : 20);
+                }
+            }
+
+            // a restarted process resumes the throttled status straight away instead of waiting for new samples
+            try (var window = OffHeapIntShiftBuffer.mapFile(windowFile, 5)) {
+                var eventBus = new SimpleEventBus();
+                var throttler = new TimeBasedThrottler(
+                    executorService, eventBus, 10, new SlidingWindowStatisticsImpl(eventBus, window), 1, TimeUnit.HOURS, false);
+                try {
+                    assertEquals(Throttler.ThrottleResult.DO_NOT_PROCEED, throttler.shouldProceed());
+                } finally {
+                    throttler.stop();
+                }
+                window.add(0);
+                window.add(0);
+                window.add(0);
+            }
+
+            try (var window = OffHeapIntShiftBuffer.mapFile(windowFile, 5)) {
+                var eventBus = new SimpleEventBus();
+                var throttler = new TimeBasedThrottler(
+                    executorService, eventBus, 10, new SlidingWindowStatisticsImpl(eventBus, window), 1, TimeUnit.HOURS, false);
+                try {
+                    assertEquals(Throttler.ThrottleResult.PROCEED, throttler.shouldProceed());
+                } finally {
+                    throttler.stop();
+                }
+            }
+        } finally {
+            Files.deleteIfExists(windowFile);
+        }
+    }
+
+    @Test
+    void testThrottlerOnDecayingStatistics() throws InterruptedException {
+        var eventBus = new SimpleEventBus();
+        var statistics = new DecayingSlidingWindowStatistics(eventBus, 1, TimeUnit.MILLISECONDS);
+        var throttler = new TimeBasedThrottler(executorService, eventBus, 10, statistics, 1, TimeUnit.HOURS, false);
+        // filled with the maximum number of hits like a sliding window
+        assertEquals(Throttler.ThrottleResult.DO_NOT_PROCEED, throttler.shouldProceed());
+
+        // after 50 half-lives the initial samples are negligible
+        Thread.sleep(50);
+        statistics.add(2);
+        assertEquals(Throttler.ThrottleResult.PROCEED, throttler.shouldProceed());
+
+        Thread.sleep(50);
+        statistics.add(30);
+        assertEquals(Throttler.ThrottleResult.DO_NOT_PROCEED, throttler.shouldProceed());
+        throttler.stop();
+    }
+
+    /** Executor capturing the sampling task of a throttler, which only runs when the test calls {@link #runSampling()} */
+    private static class ManualSamplingExecutor extends ScheduledThreadPoolExecutor {
+        private volatile Runnable samplingTask;
+
+        private ManualSamplingExecutor() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            samplingTask = command;
+            return schedule(() -> { }, 1, TimeUnit.DAYS);
+        }
+
+        void runSampling() {
+            samplingTask.run();
+        }
+    }
+
     private static class StoppableActionPerformer implements Stoppable {
         private final AtomicBoolean runStatus = new AtomicBoolean(false);
         private final Thread workerThread;
@@ -0,0 +1,87 @@
+package michelerossi.statistics;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementation of {@link AggregationKernels} with the incubating JDK Vector API, processing as many samples per
+ * instruction as the preferred vector shape of the platform allows. <br>
+ * Sums are accumulated in <code>long</code> lanes, the samples being widened from an <code>int</code> vector with as
+ * many lanes as the <code>long</code> vector, so that large windows can not overflow. <br>
+ * Kept out of the main sources and only built with the <code>vector</code> Maven profile, as the incubator module makes the
+ * compiler and the JVM print a warning. Only loaded by {@link WindowAggregations} when the <code>jdk.incubator.vector</code>
+ * module is present.
+ */
+final class VectorAggregationKernels implements AggregationKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS_TO_WIDEN = VectorSpecies.of(int.class, VectorShape.forBitSize(LONGS.length() * Integer.SIZE));
+
+    @Override
+    public long sum(int[] samples) {
+        var sums = LongVector.zero(LONGS);
+        var i = 0;
+        for (var upperBound = INTS_TO_WIDEN.loopBound(samples.length); i < upperBound; i += INTS_TO_WIDEN.length()) {
+            sums = sums.add(IntVector.fromArray(INTS_TO_WIDEN, samples, i).castShape(LONGS, 0));
+        }
+        var sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < samples.length; i++) {
+            sum += samples[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public int min(int[] samples) {
+        var mins = IntVector.broadcast(INTS, Integer.MAX_VALUE);
+        var i = 0;
+        for (var upperBound = INTS.loopBound(samples.length); i < upperBound; i += INTS.length()) {
+            mins = mins.min(IntVector.fromArray(INTS, samples, i));
+        }
+        var min = mins.reduceLanes(VectorOperators.MIN);
+        for (; i < samples.length; i++) {
+            min = Math.min(min, samples[i]);
+        }
+        return min;
+    }
+
+    @Override
+    public int max(int[] samples) {
+        var maxs = IntVector.broadcast(INTS, Integer.MIN_VALUE);
+        var i = 0;
+        for (var upperBound = INTS.loopBound(samples.length); i < upperBound; i += INTS.length()) {
+            maxs = maxs.max(IntVector.fromArray(INTS, samples, i));
+        }
+        var max = maxs.reduceLanes(VectorOperators.MAX);
+        for (; i < samples.length; i++) {
+            max = Math.max(max, samples[i]);
+        }
+        return max;
+    }
+
+    @Override
+    public int[] countBelow(int[] samples, int[] bounds) {
+        var counts = new int[bounds.length];
+        var ones = IntVector.broadcast(INTS, 1);
+        var upperBound = INTS.loopBound(samples.length);
+        // one pass per bound: the few buckets of a histogram keep the samples in the cache between passes
+        for (int b = 0; b < bounds.length; b++) {
+            var bound = bounds[b];
+            var laneCounts = IntVector.zero(INTS);
+            var i = 0;
+            for (; i < upperBound; i += INTS.length()) {
+                var below = IntVector.fromArray(INTS, samples, i).compare(VectorOperators.LT, bound);
+                laneCounts = laneCounts.add(ones, below);
+            }
+            var count = laneCounts.reduceLanes(VectorOperators.ADD);
+            for (; i < samples.length; i++) {
+                count += samples[i] < bound ? 1 : 0;
+            }
+            counts[b] = count;
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,36 @@
+package michelerossi.statistics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Tests for {@link VectorAggregationKernels}, only built and run with the vector profile */
+class TestVectorAggregationKernels {
+
+    @Test
+    void testVectorKernelsMatchScalarKernels() {
+        var scalar = new ScalarAggregationKernels();
+        var vector = new VectorAggregationKernels();
+        var random = new Random(42);
+        int[] bounds = {-1000, 0, 10, 500, 100_000};
+        // lengths which are not a multiple of the vector length exercise the scalar tails
+        for (int length : new int[]{0, 1, 3, 7, 8, 17, 64, 1001, 10_007}) {
+            var samples = random.ints(length, -200_000, 200_000).toArray();
+            assertEquals(scalar.sum(samples), vector.sum(samples), "sum of " + length);
+            assertEquals(scalar.min(samples), vector.min(samples), "min of " + length);
+            assertEquals(scalar.max(samples), vector.max(samples), "max of " + length);
+            assertArrayEquals(scalar.countBelow(samples, bounds), vector.countBelow(samples, bounds), "counts of " + length);
+        }
+    }
+
+    @Test
+    void testSumDoesNotOverflow() {
+        var samples = new int[1000];
+        Arrays.fill(samples, Integer.MAX_VALUE);
+        assertEquals(1000L * Integer.MAX_VALUE, new VectorAggregationKernels().sum(samples));
+    }
+}